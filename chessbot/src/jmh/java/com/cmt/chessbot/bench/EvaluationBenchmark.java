@@ -0,0 +1,31 @@
+package com.cmt.chessbot.bench;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.evaluation.Evaluation;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluationBenchmark {
+
+    @Param({Positions.START, Positions.KIWIPETE, Positions.MIDDLEGAME, Positions.ENDGAME})
+    public String fen;
+
+    private Board board;
+
+    @Setup
+    public void setup(){
+        board = Board.fromFEN(fen);
+    }
+
+    @Benchmark
+    public int evaluate(){
+        return Evaluation.evaluate(board);
+    }
+}
@@ -0,0 +1,58 @@
+package com.cmt.chessbot.bench;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.MoveGen;
+import com.cmt.chessbot.evaluation.Evaluation;
+import com.cmt.chessbot.evaluation.Evaluator;
+import com.cmt.chessbot.evaluation.NnueNetwork;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Classic vs NNUE evals/sec. makeEvaluateUndo is the search's leaf pattern and
+// includes the accumulator updates, which the classic evaluator doesn't need.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluatorBenchmark {
+
+    @Param({"classic", "nnue-simd", "nnue-scalar"})
+    public String evaluator;
+
+    @Param({Positions.KIWIPETE, Positions.MIDDLEGAME})
+    public String fen;
+
+    private Board board;
+    private Evaluator eval;
+    private final int[] moves = new int[MoveGen.MAX_MOVES];
+    private int n, next;
+
+    @Setup
+    public void setup(){
+        board = Board.fromFEN(fen);
+        eval = switch (evaluator){
+            case "nnue-simd" -> NnueNetwork.bootstrap(256, true);
+            case "nnue-scalar" -> NnueNetwork.bootstrap(256, false);
+            default -> Evaluation.CLASSIC;
+        };
+        eval = eval.attach(board);
+        n = MoveGen.legal(board, moves);
+    }
+
+    @Benchmark
+    public int evaluate(){
+        return eval.evaluate(board);
+    }
+
+    @Benchmark
+    public int makeEvaluateUndo(){
+        int m = moves[next++ % n];
+        board.make(m);
+        int e = eval.evaluate(board);
+        board.undo(m);
+        return e;
+    }
+}
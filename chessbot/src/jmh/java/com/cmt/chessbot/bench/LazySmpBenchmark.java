@@ -0,0 +1,69 @@
+package com.cmt.chessbot.bench;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.LazySmp;
+import com.cmt.chessbot.search.TranspositionTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Nodes-per-second scaling of LazySmp over thread counts: timed searches from a cleared
+// table. Each search runs for movetimeMs, so the score is nearly constant; "nodes" is
+// normalised per second, i.e. nps, and speedup is nodes at N threads / nodes at 1.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class LazySmpBenchmark {
+
+    @Param({Positions.START, Positions.KIWIPETE, Positions.MIDDLEGAME, Positions.ENDGAME})
+    public String fen;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"500"})
+    public int movetimeMs;
+
+    private final TranspositionTable tt = new TranspositionTable(64);
+    private ExecutorService helpers;
+    private LazySmp smp;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long nodes;
+    }
+
+    @Setup(Level.Trial)
+    public void startHelpers(){
+        helpers = Executors.newFixedThreadPool(Math.max(1, threads - 1), r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+        });
+        smp = new LazySmp(tt, helpers, threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopHelpers(){
+        helpers.shutdownNow();
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable(){
+        tt.clear();
+    }
+
+    @Benchmark
+    public AlphaBeta.Result timed(Counters counters){
+        AlphaBeta.Result r = smp.search(Board.fromFEN(fen), AlphaBeta.MAX_DEPTH, movetimeMs, threads);
+        counters.nodes += r.nodes;
+        return r;
+    }
+}
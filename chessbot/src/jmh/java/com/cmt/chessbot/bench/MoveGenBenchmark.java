@@ -0,0 +1,46 @@
+package com.cmt.chessbot.bench;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.MoveGen;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveGenBenchmark {
+
+    @Param({Positions.START, Positions.KIWIPETE, Positions.MIDDLEGAME, Positions.ENDGAME, Positions.PROMOTIONS})
+    public String fen;
+
+    private Board board;
+    private final int[] moves = new int[MoveGen.MAX_MOVES];
+
+    @Setup
+    public void setup(){
+        board = Board.fromFEN(fen);
+    }
+
+    @Benchmark
+    public int legal(){
+        return MoveGen.legal(board, moves);
+    }
+
+    @Benchmark
+    public int noisy(){
+        return MoveGen.legalNoisy(board, moves);
+    }
+
+    @Benchmark
+    public void makeUndo(){
+        int n = MoveGen.legal(board, moves);
+        for (int i=0; i<n; i++){
+            board.make(moves[i]);
+            board.undo(moves[i]);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.cmt.chessbot.bench;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.evaluation.Evaluation;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.SearchFeature;
+import com.cmt.chessbot.search.TimeManager;
+import com.cmt.chessbot.search.TranspositionTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Cost of multi-PV: fixed-depth searches for 1..k lines from a cleared table. Scores are
+// searches/sec and "nodes" is normalised the same way; the cost of each extra line is
+// (nodes per search at k / at 1 - 1) / (k - 1).
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MultiPvBenchmark {
+
+    @Param({Positions.START, Positions.KIWIPETE, Positions.MIDDLEGAME, Positions.PROMOTIONS, Positions.ENDGAME})
+    public String fen;
+
+    @Param({"1", "2", "3", "5"})
+    public int lines;
+
+    @Param({"6"})
+    public int depth;
+
+    private final TranspositionTable tt = new TranspositionTable(16);
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long nodes;
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable(){
+        tt.clear();
+    }
+
+    @Benchmark
+    public AlphaBeta.Result fixedDepth(Counters counters){
+        AlphaBeta.Result r = new AlphaBeta(depth, TimeManager.infinite(), tt, Evaluation.CLASSIC, SearchFeature.all())
+            .withMultiPv(lines).search(Board.fromFEN(fen));
+        counters.nodes += r.nodes;
+        return r;
+    }
+}
@@ -0,0 +1,50 @@
+package com.cmt.chessbot.bench;
+
+import com.cmt.chessbot.engine.Board;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// FEN parsing/writing against the packed form, as used by batch evaluation
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PositionFormatBenchmark {
+
+    @Param({Positions.START, Positions.KIWIPETE, Positions.ENDGAME})
+    public String fen;
+
+    private Board board;
+    private final ByteBuffer packed = ByteBuffer.allocateDirect(Board.PACKED_BYTES);
+
+    @Setup
+    public void setup(){
+        board = Board.fromFEN(fen);
+        board.pack(packed.clear());
+    }
+
+    @Benchmark
+    public Board parseFen(){
+        return Board.fromFEN(fen);
+    }
+
+    @Benchmark
+    public String writeFen(){
+        return board.toFEN();
+    }
+
+    @Benchmark
+    public Board unpack(){
+        return Board.unpack(packed.clear());
+    }
+
+    @Benchmark
+    public ByteBuffer pack(){
+        board.pack(packed.clear());
+        return packed;
+    }
+}
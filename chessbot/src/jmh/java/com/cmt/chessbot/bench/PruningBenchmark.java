@@ -0,0 +1,67 @@
+package com.cmt.chessbot.bench;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.evaluation.Evaluation;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.SearchFeature;
+import com.cmt.chessbot.search.TimeManager;
+import com.cmt.chessbot.search.TranspositionTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Fixed-depth search with every SearchFeature on ("all"), all off ("none"), and each one
+// switched off in turn ("-lmr" etc., chess.search.<property>), from a cleared table.
+// Scores are searches/sec; "nodes" is normalised the same way, so nodes / score is the
+// tree size each feature saves or costs.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PruningBenchmark {
+
+    @Param({Positions.START, Positions.KIWIPETE, Positions.MIDDLEGAME, Positions.PROMOTIONS, Positions.ENDGAME,
+            Positions.BACK_RANK})
+    public String fen;
+
+    @Param({"all", "none", "-pvs", "-aspiration", "-null-move", "-lmr", "-check-extension", "-qs-futility"})
+    public String features;
+
+    @Param({"6"})
+    public int depth;
+
+    private final TranspositionTable tt = new TranspositionTable(16);
+    private Set<SearchFeature> on;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long nodes;
+    }
+
+    @Setup
+    public void parseFeatures(){
+        if (features.equals("all")) { on = SearchFeature.all(); return; }
+        if (features.equals("none")) { on = SearchFeature.none(); return; }
+        on = EnumSet.allOf(SearchFeature.class);
+        if (!on.removeIf(f -> features.equals("-" + f.property)))
+            throw new IllegalArgumentException("unknown feature set " + features);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable(){
+        tt.clear();
+    }
+
+    @Benchmark
+    public AlphaBeta.Result fixedDepth(Counters counters){
+        AlphaBeta.Result r = new AlphaBeta(depth, TimeManager.infinite(), tt, Evaluation.CLASSIC, on)
+            .search(Board.fromFEN(fen));
+        counters.nodes += r.nodes;
+        return r;
+    }
+}
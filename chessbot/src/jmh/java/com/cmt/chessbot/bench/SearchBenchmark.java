@@ -0,0 +1,45 @@
+package com.cmt.chessbot.bench;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.TranspositionTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Fixed-depth search from a cleared table. Scores are searches/sec; the "nodes"
+// aux counter is normalised the same way, so it reads as nodes/sec.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    @Param({Positions.START, Positions.KIWIPETE, Positions.MIDDLEGAME, Positions.ENDGAME})
+    public String fen;
+
+    @Param({"4"})
+    public int depth;
+
+    private final TranspositionTable tt = new TranspositionTable(1);
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long nodes;
+    }
+
+    @Setup(Level.Invocation)
+    public void clearTable(){
+        tt.clear();
+    }
+
+    @Benchmark
+    public AlphaBeta.Result fixedDepth(Counters counters){
+        AlphaBeta.Result r = new AlphaBeta(depth, 0, tt).search(Board.fromFEN(fen));
+        counters.nodes += r.nodes;
+        return r;
+    }
+}
@@ -0,0 +1,97 @@
+package com.cmt.chessbot.book;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.MoveGen;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+// Read-only opening book: a file of 16-byte entries (long Zobrist key, int packed
+// move, int weight), big endian, sorted by key. The file is memory-mapped and
+// binary-searched in place; nothing is loaded onto the heap. Keys are this engine's
+// Zobrist keys, so books are built with PgnImporter rather than taken from elsewhere.
+public class OpeningBook implements AutoCloseable {
+
+    static final int ENTRY = 16;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int entries;
+
+    private OpeningBook(FileChannel channel, MappedByteBuffer map, int entries){
+        this.channel = channel; this.map = map; this.entries = entries;
+    }
+
+    public static OpeningBook open(Path file){
+        try {
+            FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+            if (ch.size() % ENTRY != 0) throw new IllegalArgumentException("not a book file: " + file);
+            if (ch.size() > Integer.MAX_VALUE) throw new IllegalArgumentException("book larger than 2 GB: " + file);
+            return new OpeningBook(ch, ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), (int) (ch.size() / ENTRY));
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open book " + file, e);
+        }
+    }
+
+    public static OpeningBook empty(){ return new OpeningBook(null, null, 0); }
+
+    public int size(){ return entries; }
+
+    public record Entry(int move, int weight) {}
+
+    // All book moves for the position, in file order (heaviest first when built by PgnImporter).
+    public List<Entry> lookup(long key){
+        List<Entry> out = new ArrayList<>(4);
+        for (int i = first(key); i < entries && map.getLong(i * ENTRY) == key; i++){
+            out.add(new Entry(map.getInt(i * ENTRY + 8), map.getInt(i * ENTRY + 12)));
+        }
+        return out;
+    }
+
+    // A legal book move for b, or Move.NONE. Heaviest entry, or drawn in proportion
+    // to weight when random is given.
+    public int pick(Board b, RandomGenerator random){
+        int best = Move.NONE, bestWeight = -1;
+        long total = 0;
+        for (Entry e : lookup(b.hash())){
+            if (e.weight() <= 0 || !MoveGen.isLegal(b, e.move())) continue;
+            if (random != null){
+                // weighted reservoir sampling: keep each entry with probability weight / running total
+                total += e.weight();
+                if (random.nextLong(total) < e.weight()) best = e.move();
+            } else if (e.weight() > bestWeight){
+                best = e.move(); bestWeight = e.weight();
+            }
+        }
+        return best;
+    }
+
+    // lowest index whose key is >= key
+    private int first(long key){
+        int lo = 0, hi = entries;
+        while (lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if (map.getLong(mid * ENTRY) < key) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    @Override
+    public void close(){
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
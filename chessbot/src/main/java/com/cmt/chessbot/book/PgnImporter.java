@@ -0,0 +1,133 @@
+package com.cmt.chessbot.book;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.San;
+import com.cmt.chessbot.engine.Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Builds an OpeningBook file from a local PGN file. Every game contributes its first
+// maxPly moves; a move's weight is 2 per win and 1 per draw for the side that played
+// it (losses count 0), and moves below minWeight are dropped. Games starting from a
+// FEN tag are skipped, as are moves that do not parse (the rest of that game too).
+//
+//   mvn compile exec:java -Dexec.mainClass=com.cmt.chessbot.book.PgnImporter -Dexec.args="games.pgn book.bin 20 2"
+// args: pgn file, output file, max plies (default 20), min weight (default 2)
+public class PgnImporter {
+
+    private final int maxPly, minWeight;
+    private final Map<Long, Map<Integer, Integer>> weights = new HashMap<>();
+    private int games, skipped;
+
+    public PgnImporter(int maxPly, int minWeight){
+        this.maxPly = maxPly;
+        this.minWeight = minWeight;
+    }
+
+    public static void main(String[] args){
+        PgnImporter imp = new PgnImporter(args.length > 2 ? Integer.parseInt(args[2]) : 20,
+                                          args.length > 3 ? Integer.parseInt(args[3]) : 2);
+        imp.read(Path.of(args[0]));
+        int n = imp.write(Path.of(args[1]));
+        System.out.printf("%d games (%d skipped), %d positions, %d entries%n", imp.games, imp.skipped, imp.weights.size(), n);
+    }
+
+    public void read(Path pgn){
+        try (BufferedReader in = Files.newBufferedReader(pgn, StandardCharsets.ISO_8859_1)){
+            String result = "*";
+            boolean fen = false;
+            StringBuilder movetext = new StringBuilder();
+            for (String line; (line = in.readLine()) != null; ){
+                String t = line.strip();
+                if (t.startsWith("[")){
+                    // a tag after movetext starts the next game
+                    if (!movetext.isEmpty()){ game(movetext, result, fen); movetext.setLength(0); result = "*"; fen = false; }
+                    if (t.startsWith("[Result ")) result = t.substring(t.indexOf('"') + 1, t.lastIndexOf('"'));
+                    if (t.startsWith("[FEN ")) fen = true;
+                } else if (!t.startsWith("%")){
+                    movetext.append(line).append('\n');
+                }
+            }
+            if (!movetext.isEmpty()) game(movetext, result, fen);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read " + pgn, e);
+        }
+    }
+
+    private void game(CharSequence movetext, String result, boolean fromFen){
+        if (fromFen){ skipped++; return; }
+        games++;
+        int white = switch (result){ case "1-0" -> 2; case "0-1" -> 0; default -> 1; };
+        Board b = Board.fromFEN(Util.START_FEN);
+        int ply = 0;
+        for (String san : sanTokens(movetext)){
+            if (ply >= maxPly) break;
+            int m = San.parse(b, san);
+            if (m == Move.NONE) break;
+            int w = b.whiteToMove() ? white : 2 - white;
+            weights.computeIfAbsent(b.hash(), k -> new HashMap<>()).merge(m, w, Integer::sum);
+            b.make(m);
+            ply++;
+        }
+    }
+
+    // movetext minus comments, variations, move numbers, NAGs and the result
+    static List<String> sanTokens(CharSequence text){
+        List<String> out = new ArrayList<>();
+        int braces = 0, parens = 0;
+        StringBuilder tok = new StringBuilder();
+        for (int i=0; i<=text.length(); i++){
+            char ch = i < text.length() ? text.charAt(i) : ' ';
+            if (braces > 0){ if (ch == '}') braces--; continue; }
+            if (ch == ';'){ while (i < text.length() && text.charAt(i) != '\n') i++; ch = ' '; }
+            if (ch == '{'){ braces++; ch = ' '; }
+            else if (ch == '('){ parens++; ch = ' '; }
+            else if (ch == ')'){ parens--; ch = ' '; }
+            if (!Character.isWhitespace(ch) && ch != '.'){
+                if (parens == 0) tok.append(ch);
+                continue;
+            }
+            // a dot ends a move number ("12." or "12...")
+            if (!tok.isEmpty()){
+                String s = tok.toString();
+                tok.setLength(0);
+                if (Character.isDigit(s.charAt(0)) && !s.startsWith("0-0")) continue; // move number or result
+                if (s.charAt(0) == '$' || s.equals("*")) continue;
+                out.add(s);
+            }
+        }
+        return out;
+    }
+
+    // Writes the book sorted by key, heaviest move first within a key. Returns the entry count.
+    public int write(Path file){
+        List<long[]> rows = new ArrayList<>();
+        weights.forEach((key, moves) -> moves.forEach((move, w) -> {
+            if (w >= minWeight) rows.add(new long[]{key, move, w});
+        }));
+        rows.sort((a, c) -> a[0] != c[0] ? Long.compare(a[0], c[0]) : Long.compare(c[2], a[2]));
+        ByteBuffer buf = ByteBuffer.allocate(rows.size() * OpeningBook.ENTRY);
+        for (long[] r : rows) buf.putLong(r[0]).putInt((int) r[1]).putInt((int) r[2]);
+        buf.flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING)){
+            while (buf.hasRemaining()) ch.write(buf);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write " + file, e);
+        }
+        return rows.size();
+    }
+}
@@ -0,0 +1,125 @@
+package com.cmt.chessbot.cache;
+
+import com.cmt.chessbot.search.AlphaBeta;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Search results keyed by (Zobrist key, evaluator). A request is served when a result
+// of at least the requested depth exists. Two tiers: a bounded in-memory map, and
+// optionally a memory-mapped file (DiskStore) that survives restarts and refills
+// the memory tier on a hit. Capacity 0 and no file disables the cache.
+public class AnalysisCache implements AutoCloseable {
+
+    private static final int SHALLOWEST_SAMPLE = 8;
+
+    private final List<String> evaluators; // id on disk = index + 1
+    private final int capacity;
+    private final EvictionPolicy policy;
+    private final LinkedHashMap<Key, AlphaBeta.Result> memory;
+    private final DiskStore disk; // null when disabled
+
+    private final AtomicLong memoryHits = new AtomicLong(), diskHits = new AtomicLong(),
+                             misses = new AtomicLong(), stores = new AtomicLong(), evictions = new AtomicLong();
+
+    private record Key(long hash, String evaluator) {}
+
+    public AnalysisCache(List<String> evaluators, int capacity, EvictionPolicy policy, Path diskFile, int diskMb){
+        this.evaluators = List.copyOf(evaluators);
+        this.capacity = Math.max(0, capacity);
+        this.policy = policy;
+        this.memory = new LinkedHashMap<>(16, 0.75f, policy != EvictionPolicy.FIFO);
+        this.disk = diskFile == null ? null : new DiskStore(diskFile, diskMb);
+    }
+
+    public AlphaBeta.Result get(long hash, String evaluator, int minDepth){
+        if (capacity == 0 && disk == null) return null;
+        Key k = new Key(hash, evaluator);
+        AlphaBeta.Result a;
+        synchronized (memory){
+            a = memory.get(k);
+        }
+        if (a != null && a.depth >= minDepth){
+            memoryHits.incrementAndGet();
+            return a;
+        }
+        if (disk != null){
+            AlphaBeta.Result d = disk.get(hash, id(evaluator));
+            if (d != null && d.depth >= minDepth){
+                diskHits.incrementAndGet();
+                remember(k, d);
+                return d;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    // Keeps the deeper of the stored and the new result.
+    public void put(long hash, String evaluator, AlphaBeta.Result a){
+        if (a.depth <= 0 || (capacity == 0 && disk == null)) return;
+        stores.incrementAndGet();
+        remember(new Key(hash, evaluator), a);
+        if (disk != null) disk.put(hash, id(evaluator), a);
+    }
+
+    private void remember(Key k, AlphaBeta.Result a){
+        if (capacity == 0) return;
+        synchronized (memory){
+            AlphaBeta.Result old = memory.get(k);
+            if (old != null && old.depth > a.depth) return;
+            memory.put(k, a);
+            while (memory.size() > capacity) evictOne();
+        }
+    }
+
+    private void evictOne(){
+        Iterator<Map.Entry<Key, AlphaBeta.Result>> it = memory.entrySet().iterator();
+        if (policy == EvictionPolicy.SHALLOWEST){
+            Key victim = null;
+            int depth = Integer.MAX_VALUE;
+            for (int i=0; i<SHALLOWEST_SAMPLE && it.hasNext(); i++){
+                Map.Entry<Key, AlphaBeta.Result> e = it.next();
+                if (e.getValue().depth < depth){ depth = e.getValue().depth; victim = e.getKey(); }
+            }
+            memory.remove(victim);
+        } else {
+            it.next();
+            it.remove();
+        }
+        evictions.incrementAndGet();
+    }
+
+    private int id(String evaluator){
+        int i = evaluators.indexOf(evaluator);
+        if (i < 0) throw new IllegalArgumentException("unknown evaluator: " + evaluator);
+        return i + 1;
+    }
+
+    public Map<String,Object> stats(){
+        long hits = memoryHits.get() + diskHits.get(), total = hits + misses.get();
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("policy", policy.name().toLowerCase());
+        synchronized (memory){
+            out.put("entries", memory.size());
+        }
+        out.put("capacity", capacity);
+        out.put("diskSlots", disk == null ? 0 : disk.slots());
+        out.put("memoryHits", memoryHits.get());
+        out.put("diskHits", diskHits.get());
+        out.put("misses", misses.get());
+        out.put("hitRate", total == 0 ? 0.0 : (double) hits / total);
+        out.put("stores", stores.get());
+        out.put("evictions", evictions.get());
+        return out;
+    }
+
+    @Override
+    public void close(){
+        if (disk != null) disk.close();
+    }
+}
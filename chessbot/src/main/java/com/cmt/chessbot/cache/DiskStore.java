@@ -0,0 +1,117 @@
+package com.cmt.chessbot.cache;
+
+import com.cmt.chessbot.search.AlphaBeta;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+// Direct-mapped table of fixed-size records in a memory-mapped file, so results
+// survive restarts without loading anything up front. A slot is picked by key;
+// an entry for another position is overwritten, one for the same position only
+// by a deeper result.
+//
+// Record (64 bytes): long key, byte evaluator id (0 = empty slot), byte depth,
+// short score, byte pv length, 3 pad, long nodes, short pv[18] (from|to<<6|promo<<12),
+// int CRC32C of the bytes before it. A record whose checksum doesn't match (a write torn
+// by a crash, a damaged file, one from an older layout) reads as a miss.
+final class DiskStore implements AutoCloseable {
+
+    static final int RECORD = 64;
+    private static final int MAX_PV = 18;
+    private static final int CHECKSUM = RECORD - 4; // offset of the checksum
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int slots;
+    private final CRC32C crc = new CRC32C();
+
+    DiskStore(Path file, int sizeMb){
+        try {
+            if (file.getParent() != null) Files.createDirectories(file.getParent());
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long want = Long.highestOneBit(Math.max(1, (long) sizeMb * 1024 * 1024 / RECORD)) * RECORD;
+            // an existing file keeps its size, so slot positions stay valid
+            long size = channel.size() >= RECORD ? channel.size() / RECORD * RECORD : want;
+            slots = (int) (size / RECORD);
+            if (Integer.bitCount(slots) != 1) throw new IllegalArgumentException("cache file has a bad size: " + file);
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot open cache file " + file, e);
+        }
+    }
+
+    synchronized AlphaBeta.Result get(long key, int evalId){
+        int at = slot(key);
+        if (map.getLong(at) != key || map.get(at + 8) != evalId) return null;
+        if (map.getInt(at + CHECKSUM) != checksum(at)) return null;
+        int len = map.get(at + 12);
+        List<String> pv = new ArrayList<>(len);
+        for (int i=0; i<len; i++) pv.add(uci(map.getShort(at + 24 + 2*i)));
+        return new AlphaBeta.Result(pv.isEmpty() ? "none" : pv.get(0), map.getShort(at + 10), map.get(at + 9), List.copyOf(pv), map.getLong(at + 16));
+    }
+
+    synchronized void put(long key, int evalId, AlphaBeta.Result a){
+        int at = slot(key);
+        if (map.getLong(at) == key && map.get(at + 8) == evalId && map.get(at + 9) > a.depth) return;
+        int len = Math.min(a.pv.size(), MAX_PV);
+        map.putLong(at, key);
+        map.put(at + 8, (byte) evalId);
+        map.put(at + 9, (byte) a.depth);
+        map.putShort(at + 10, (short) a.scoreCp);
+        map.put(at + 12, (byte) len);
+        map.putLong(at + 16, a.nodes);
+        for (int i=0; i<len; i++) map.putShort(at + 24 + 2*i, packUci(a.pv.get(i)));
+        map.putInt(at + CHECKSUM, checksum(at));
+    }
+
+    private int checksum(int at){
+        crc.reset();
+        crc.update(map.slice(at, CHECKSUM));
+        return (int) crc.getValue();
+    }
+
+    int slots(){ return slots; }
+
+    private int slot(long key){ return (int) (key & (slots - 1)) * RECORD; }
+
+    @Override
+    public synchronized void close(){
+        map.force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // uci <-> 16 bits; square index is r*8+c with r=0 on rank 8, as on the Board
+    private static final String PROMO = " nbrq";
+
+    static short packUci(String uci){
+        int from = square(uci, 0), to = square(uci, 2);
+        int promo = uci.length() > 4 ? PROMO.indexOf(uci.charAt(4)) : 0;
+        return (short) (from | to << 6 | promo << 12);
+    }
+
+    static String uci(short packed){
+        int from = packed & 63, to = (packed >> 6) & 63, promo = (packed >> 12) & 7;
+        String s = name(from) + name(to);
+        return promo == 0 ? s : s + PROMO.charAt(promo);
+    }
+
+    private static int square(String uci, int i){
+        return ('8' - uci.charAt(i + 1)) * 8 + (uci.charAt(i) - 'a');
+    }
+
+    private static String name(int sq){
+        return "" + (char) ('a' + (sq & 7)) + (char) ('8' - (sq >> 3));
+    }
+}
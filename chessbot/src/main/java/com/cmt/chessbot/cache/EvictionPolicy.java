@@ -0,0 +1,8 @@
+package com.cmt.chessbot.cache;
+
+// Which entry the in-memory tier drops when it is full.
+public enum EvictionPolicy {
+    LRU,        // least recently read or written
+    FIFO,       // oldest write
+    SHALLOWEST  // shallowest of the few least recently used, so deep results survive longer
+}
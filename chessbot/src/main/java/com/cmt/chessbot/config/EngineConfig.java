@@ -0,0 +1,180 @@
+package com.cmt.chessbot.config;
+
+import com.cmt.chessbot.book.OpeningBook;
+import com.cmt.chessbot.cache.AnalysisCache;
+import com.cmt.chessbot.cache.EvictionPolicy;
+import com.cmt.chessbot.evaluation.Evaluators;
+import com.cmt.chessbot.evaluation.NnueNetwork;
+import com.cmt.chessbot.search.LazySmp;
+import com.cmt.chessbot.search.SearchFeature;
+import com.cmt.chessbot.search.TranspositionTable;
+import com.cmt.chessbot.session.GameSessions;
+import com.cmt.chessbot.tablebase.Tablebase;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class EngineConfig {
+
+    // Shared by all requests so repeat queries on nearby positions start warm.
+    @Bean
+    public TranspositionTable transpositionTable(@Value("${chess.tt.size-mb:64}") int sizeMb){
+        return new TranspositionTable(sizeMb);
+    }
+
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService searchHelperPool(@Value("${chess.search.max-threads:1}") int maxThreads){
+        AtomicInteger seq = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, maxThreads - 1), r -> {
+            Thread t = new Thread(r, "search-helper-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Finished results by position; an empty disk file keeps the cache in memory only.
+    @Bean
+    public AnalysisCache analysisCache(Evaluators evaluators,
+                                       @Value("${chess.cache.memory-entries:100000}") int entries,
+                                       @Value("${chess.cache.eviction:lru}") String eviction,
+                                       @Value("${chess.cache.disk-file:}") String diskFile,
+                                       @Value("${chess.cache.disk-mb:64}") int diskMb){
+        return new AnalysisCache(List.copyOf(evaluators.names()), entries, EvictionPolicy.valueOf(eviction.toUpperCase()),
+                                 diskFile.isBlank() ? null : Path.of(diskFile), diskMb);
+    }
+
+    // Runs /evaluate, /play and /perft searches. Requests are handled on virtual threads;
+    // searches are CPU-bound, so they get max-concurrent platform threads and a queue of
+    // max-queued. Past that the pool rejects and the request gets 429. 0 = one per core less
+    // the ponder threads, so pondering never competes with a search for a core.
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService searchPool(@Value("${chess.search.max-concurrent:0}") int maxConcurrent,
+                                      @Value("${chess.search.max-queued:16}") int maxQueued,
+                                      @Value("${chess.ponder.threads:1}") int ponderThreads){
+        int cores = Runtime.getRuntime().availableProcessors();
+        return boundedPool("search", maxConcurrent > 0 ? maxConcurrent : Math.max(1, cores - Math.max(1, ponderThreads)),
+                           maxQueued);
+    }
+
+    // Runs streamed analyses (/analyze) off the request thread, max-streams at a time with
+    // max-queued waiting; past that the stream is refused with 429.
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService analysisPool(@Value("${chess.analysis.max-streams:4}") int maxStreams,
+                                        @Value("${chess.analysis.max-queued:4}") int maxQueued){
+        return boundedPool("analysis", Math.max(1, maxStreams), maxQueued);
+    }
+
+    // threads daemon platform threads and a queue of at most queued tasks (0 = hand-off
+    // only); a task past that is rejected with RejectedExecutionException
+    private static ExecutorService boundedPool(String name, int threads, int queued){
+        AtomicInteger seq = new AtomicInteger();
+        BlockingQueue<Runnable> queue = queued > 0 ? new ArrayBlockingQueue<>(queued) : new SynchronousQueue<>();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, queue, r -> {
+            Thread t = new Thread(r, name + "-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Splits parallel /perft counts; 0 threads = one per core. Its own pool, so a count
+    // does not hold up other users of the common pool.
+    @Bean(destroyMethod = "shutdownNow")
+    public ForkJoinPool perftPool(@Value("${chess.perft.threads:0}") int threads){
+        return new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    // Runs /evaluate/batch items, one single-threaded search each; 0 threads = one per core.
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService batchPool(@Value("${chess.batch.threads:0}") int threads){
+        AtomicInteger seq = new AtomicInteger();
+        int n = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return Executors.newFixedThreadPool(n, r -> {
+            Thread t = new Thread(r, "batch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    // Open games; each holds a chess.session.tt-mb table, so memory-mb bounds how many stay open.
+    @Bean
+    public GameSessions gameSessions(@Value("${chess.session.memory-mb:256}") int memoryMb,
+                                     @Value("${chess.session.tt-mb:4}") int ttMb,
+                                     @Value("${chess.session.idle-timeout-ms:1800000}") long idleTimeoutMs){
+        return new GameSessions(memoryMb / Math.max(1, ttMb), idleTimeoutMs);
+    }
+
+    // Background searches of games created with ponder. GameService never has more ponder
+    // searches going than there are threads. The low priority is only a hint: Linux ignores
+    // Java thread priorities by default, which is why searchPool leaves these threads a core.
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService ponderPool(@Value("${chess.ponder.threads:1}") int threads){
+        AtomicInteger seq = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "ponder-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+    }
+
+    // chess.search.<feature>=false switches one enhancement off, e.g. chess.search.lmr=false
+    @Bean
+    public Set<SearchFeature> searchFeatures(Environment env){
+        Set<SearchFeature> on = EnumSet.noneOf(SearchFeature.class);
+        for (SearchFeature f : SearchFeature.values()){
+            if (env.getProperty("chess.search." + f.property, Boolean.class, true)) on.add(f);
+        }
+        return on;
+    }
+
+    @Bean
+    public LazySmp lazySmp(TranspositionTable tt, @Qualifier("searchHelperPool") ExecutorService searchHelperPool,
+                           @Value("${chess.search.max-threads:1}") int maxThreads, Set<SearchFeature> searchFeatures,
+                           Tablebase tablebase){
+        return new LazySmp(tt, searchHelperPool, maxThreads, searchFeatures, tablebase);
+    }
+
+    // Tables built with TablebaseGenerator; empty dir means none. Positions with more
+    // than max-pieces pieces are never probed.
+    @Bean
+    public Tablebase tablebase(@Value("${chess.tablebase.dir:}") String dir,
+                               @Value("${chess.tablebase.max-pieces:4}") int maxPieces,
+                               @Value("${chess.tablebase.cache-blocks:512}") int cacheBlocks){
+        return dir.isBlank() ? Tablebase.empty() : Tablebase.open(Path.of(dir), maxPieces, cacheBlocks);
+    }
+
+    // Weights are read into heap arrays once at startup; without a file the PST-derived bootstrap net is used.
+    @Bean
+    public NnueNetwork nnueNetwork(@Value("${chess.eval.nnue.file:}") String file,
+                                   @Value("${chess.eval.nnue.simd:true}") boolean simd){
+        return file.isEmpty() ? NnueNetwork.bootstrap(256, simd) : NnueNetwork.load(Path.of(file), simd);
+    }
+
+    @Bean
+    public Evaluators evaluators(NnueNetwork nnueNetwork, @Value("${chess.eval.default:classic}") String defaultName){
+        return new Evaluators(nnueNetwork, defaultName);
+    }
+
+    // Built offline with PgnImporter; empty means no book and every move is searched.
+    @Bean
+    public OpeningBook openingBook(@Value("${chess.book.file:}") String file){
+        return file.isBlank() ? OpeningBook.empty() : OpeningBook.open(Path.of(file));
+    }
+}
@@ -1,9 +1,39 @@
 package com.cmt.chessbot.controller;
 
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.SearchLimits;
+import com.cmt.chessbot.service.BatchService;
 import com.cmt.chessbot.service.ChessService;
+import com.cmt.chessbot.service.GameService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.context.request.async.DeferredResultProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/chess")
@@ -11,26 +41,349 @@ import java.util.Map;
 public class ChessController {
 
     private final ChessService service;
+    private final BatchService batchService;
+    private final GameService games;
+    private final ObjectMapper mapper;
 
-    public ChessController(ChessService service) {
+    // a position in Board's packed form (Board.PACKED_BYTES), instead of FEN
+    static final String PACKED_POSITION = "application/x-chess-position";
+    private final long analysisTimeoutMs;
+
+    public ChessController(ChessService service, BatchService batchService, GameService games, ObjectMapper mapper,
+                           @Value("${chess.analysis.timeout-ms:60000}") long analysisTimeoutMs) {
         this.service = service;
+        this.batchService = batchService;
+        this.games = games;
+        this.mapper = mapper;
+        this.analysisTimeoutMs = analysisTimeoutMs;
     }
 
     // Evaluate position and return score + PV etc.
     @PostMapping("/evaluate")
-    public Map<String, Object> evaluate(@RequestBody Map<String, Object> req) {
-        String fen = (String) req.getOrDefault("fen", com.cmt.chessbot.engine.Util.START_FEN);
-        int depth = (int) ((Number) req.getOrDefault("depth", 4)).intValue();
-        int movetimeMs = (int) ((Number) req.getOrDefault("movetimeMs", 0)).intValue();
-        return service.evaluate(fen, depth, movetimeMs);
+    public CompletableFuture<Map<String, Object>> evaluate(@RequestBody Map<String, Object> req, HttpServletRequest http) {
+        String fen = text(req.get("fen"), com.cmt.chessbot.engine.Util.START_FEN);
+        int threads = (int) number(req.get("threads"), 1);
+        String eval = text(req.get("eval"), null); // "classic" or "nnue"; null = configured default
+        boolean stats = flag(req.get("stats"), false); // search counters, for latency digging
+        int multiPv = (int) number(req.get("multiPv"), 1); // > 1: also the best root moves as "lines"
+        return cancelOnDisconnect(http, service.evaluate(fen, limits(req), threads, eval, stats, multiPv));
+    }
+
+    // The same with a packed position as the body and the other fields as query parameters
+    @PostMapping(value = "/evaluate", consumes = PACKED_POSITION)
+    public CompletableFuture<Map<String, Object>> evaluatePacked(@RequestBody byte[] body,
+                                                                @RequestParam Map<String, String> params,
+                                                                HttpServletRequest http) {
+        int threads = (int) number(params.get("threads"), 1);
+        boolean stats = flag(params.get("stats"), false);
+        int multiPv = (int) number(params.get("multiPv"), 1);
+        return cancelOnDisconnect(http,
+            service.evaluate(unpack(body), limits(params), threads, params.get("eval"), stats, multiPv));
+    }
+
+    private static Board unpack(byte[] body) {
+        if (body.length != Board.PACKED_BYTES)
+            throw new IllegalArgumentException("packed position is " + Board.PACKED_BYTES + " bytes, got " + body.length);
+        return Board.unpack(ByteBuffer.wrap(body));
+    }
+
+    // Evaluate many positions: {"positions": [fen or {"fen", "depth", "movetimeMs", "eval"}, ...]}
+    // with batch-wide "depth", "movetimeMs" and "eval" defaults. Results stream back as NDJSON
+    // in completion order, each carrying the "index" of its position.
+    @PostMapping(value = "/evaluate/batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public void evaluateBatch(@RequestBody Map<String, Object> req, HttpServletResponse resp)
+            throws IOException, InterruptedException {
+        if (!(req.getOrDefault("positions", List.of()) instanceof List<?> positions))
+            throw new IllegalArgumentException("positions is not a list");
+        try (BatchService.Batch batch = openBatch(resp)) {
+            for (Object p : positions) {
+                if (batch.cancelled()) break;
+                submit(batch, null, p instanceof Map<?, ?> m ? m : Map.of("fen", p), req);
+            }
+        }
+    }
+
+    // The same with an NDJSON body, one position per line (an object as above or a bare FEN),
+    // read only as fast as the workers keep up; defaults come from query parameters.
+    @PostMapping(value = "/evaluate/batch", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public void evaluateBatchStream(@RequestParam Map<String, String> defaults, HttpServletRequest req,
+                                    HttpServletResponse resp) throws IOException, InterruptedException {
+        BufferedReader in = req.getReader();
+        try (BatchService.Batch batch = openBatch(resp)) {
+            for (String line; !batch.cancelled() && (line = in.readLine()) != null; ) {
+                line = line.strip();
+                if (line.isEmpty()) continue;
+                try {
+                    submit(batch, null, line.startsWith("{") ? mapper.readValue(line, Map.class) : Map.of("fen", line), defaults);
+                } catch (JsonProcessingException e) {
+                    batch.reject("bad line: " + e.getOriginalMessage());
+                }
+            }
+        }
+    }
+
+    // The same with packed positions back to back as the body, each decoded straight from
+    // one reused buffer
+    @PostMapping(value = "/evaluate/batch", consumes = PACKED_POSITION)
+    public void evaluateBatchPacked(@RequestParam Map<String, String> defaults, HttpServletRequest req,
+                                    HttpServletResponse resp) throws IOException, InterruptedException {
+        InputStream in = req.getInputStream();
+        ByteBuffer record = ByteBuffer.allocate(Board.PACKED_BYTES);
+        try (BatchService.Batch batch = openBatch(resp)) {
+            while (!batch.cancelled()) {
+                int n = in.readNBytes(record.array(), 0, Board.PACKED_BYTES);
+                if (n == 0) break;
+                if (n < Board.PACKED_BYTES) { batch.reject("truncated position: " + n + " bytes"); break; }
+                Board b;
+                try {
+                    b = Board.unpack(record.clear());
+                } catch (IllegalArgumentException e) {
+                    batch.reject(e.getMessage());
+                    continue;
+                }
+                submit(batch, b, Map.of(), defaults);
+            }
+        }
+    }
+
+    private BatchService.Batch openBatch(HttpServletResponse resp) throws IOException {
+        resp.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        OutputStream out = resp.getOutputStream();
+        return batchService.open(result -> {
+            try {
+                out.write(mapper.writeValueAsBytes(result));
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    // Item fields win over the batch defaults. Values may be numbers or strings (query parameters).
+    // board, when not null, is the position and item has no fen.
+    private static void submit(BatchService.Batch batch, Board board, Map<?, ?> item, Map<String, ?> defaults)
+            throws InterruptedException {
+        Object fen = item.get("fen");
+        Object eval = item.containsKey("eval") ? item.get("eval") : defaults.get("eval");
+        long depth, movetimeMs;
+        try {
+            depth = number(item.containsKey("depth") ? item.get("depth") : defaults.get("depth"), 4);
+            movetimeMs = number(item.containsKey("movetimeMs") ? item.get("movetimeMs") : defaults.get("movetimeMs"), 0);
+        } catch (IllegalArgumentException e) {
+            batch.reject(e.getMessage());
+            return;
+        }
+        if (fen == null && board == null) { batch.reject("missing fen"); return; }
+        batch.submit(new BatchService.Item(fen == null ? null : fen.toString(), board,
+                                           (int) Math.min(depth, AlphaBeta.MAX_DEPTH), movetimeMs,
+                                           eval == null ? null : eval.toString()));
+    }
+
+    // Request fields as JSON values or query-parameter strings. A value of the wrong kind is
+    // an IllegalArgumentException (400), never a ClassCastException (500).
+    private static long number(Object v, long dflt) {
+        if (v instanceof Number n) return n.longValue();
+        if (v instanceof String s && !s.isBlank()) {
+            try {
+                return Long.parseLong(s.strip());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("not a number: " + s);
+            }
+        }
+        if (v == null || v instanceof String) return dflt;
+        throw new IllegalArgumentException("not a number: " + v);
+    }
+
+    private static boolean flag(Object v, boolean dflt) {
+        if (v instanceof Boolean b) return b;
+        if (v instanceof String s && s.strip().equalsIgnoreCase("true")) return true;
+        if (v instanceof String s && s.strip().equalsIgnoreCase("false")) return false;
+        if (v == null || v instanceof String s && s.isBlank()) return dflt;
+        throw new IllegalArgumentException("not true or false: " + v);
+    }
+
+    private static String text(Object v, String dflt) {
+        if (v instanceof String s) return s;
+        if (v == null) return dflt;
+        throw new IllegalArgumentException("not a string: " + v);
     }
 
     // Ask bot to play a move from a FEN; returns bot move and evaluation
     @PostMapping("/play")
-    public Map<String, Object> play(@RequestBody Map<String, Object> req) {
-        String fen = (String) req.getOrDefault("fen", com.cmt.chessbot.engine.Util.START_FEN);
-        int depth = (int) ((Number) req.getOrDefault("depth", 4)).intValue();
-        int movetimeMs = (int) ((Number) req.getOrDefault("movetimeMs", 0)).intValue();
-        return service.bestMove(fen, depth, movetimeMs);
+    public CompletableFuture<Map<String, Object>> play(@RequestBody Map<String, Object> req, HttpServletRequest http) {
+        String fen = text(req.get("fen"), com.cmt.chessbot.engine.Util.START_FEN);
+        int threads = (int) number(req.get("threads"), 1);
+        String eval = text(req.get("eval"), null);
+        boolean book = flag(req.get("book"), true); // false always searches
+        return cancelOnDisconnect(http, service.bestMove(fen, limits(req), threads, eval, book));
+    }
+
+    @PostMapping(value = "/play", consumes = PACKED_POSITION)
+    public CompletableFuture<Map<String, Object>> playPacked(@RequestBody byte[] body,
+                                                            @RequestParam Map<String, String> params,
+                                                            HttpServletRequest http) {
+        int threads = (int) number(params.get("threads"), 1);
+        boolean book = flag(params.get("book"), true);
+        return cancelOnDisconnect(http, service.bestMove(unpack(body), limits(params), threads, params.get("eval"), book));
+    }
+
+    // Cancelling the future stops its search. Once async processing has started, a listener
+    // on the request's AsyncContext cancels it when the container reports an error (a failed
+    // I/O, including on a connection the client closed) or the async timeout. Nothing is
+    // written before the result, so its status is still the result's or an exception handler's.
+    private <T> CompletableFuture<T> cancelOnDisconnect(HttpServletRequest http, CompletableFuture<T> search) {
+        if (search.isDone()) return search;
+        WebAsyncUtils.getAsyncManager(http).registerDeferredResultInterceptor(search, new DeferredResultProcessingInterceptor() {
+            @Override
+            public <R> void preProcess(NativeWebRequest request, DeferredResult<R> result) {
+                http.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) { search.cancel(false); } // no-op once done
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) { search.cancel(false); }
+
+                    @Override
+                    public void onError(AsyncEvent event) { search.cancel(false); }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {}
+                });
+            }
+        });
+        return search;
+    }
+
+    // The search pool and its queue are full: shed the request rather than queue it.
+    @ExceptionHandler(RejectedExecutionException.class)
+    @ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+    public Map<String, Object> busy() {
+        return Map.of("error", "too many searches, retry later");
+    }
+
+    // the search was cancelled because the client went away: nobody reads this
+    @ExceptionHandler(CancellationException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public void cancelled() {
+    }
+
+    // bad FEN, move or option
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, Object> badRequest(IllegalArgumentException e) {
+        return Map.of("error", String.valueOf(e.getMessage()));
+    }
+
+    // Start a game against the bot: {"fen", "eval", "ponder"}, all optional. With "ponder": true
+    // the bot keeps thinking on the reply it expects while waiting. Returns its id and state.
+    @PostMapping("/games")
+    public Map<String, Object> createGame(@RequestBody(required = false) Map<String, Object> req) {
+        Map<String, Object> r = req != null ? req : Map.of();
+        return games.create(text(r.get("fen"), null), text(r.get("eval"), null), flag(r.get("ponder"), false));
+    }
+
+    @GetMapping("/games/{id}")
+    public Map<String, Object> game(@PathVariable String id) {
+        return found(games.get(id), id);
+    }
+
+    // Play {"move"} (UCI or SAN) and get the bot's "reply" (unless "reply": false), searched
+    // with the /play limits. Without a move the bot moves, e.g. when it plays white.
+    @PostMapping("/games/{id}/moves")
+    public CompletableFuture<Map<String, Object>> gameMove(@PathVariable String id, @RequestBody Map<String, Object> req) {
+        boolean reply = flag(req.get("reply"), true);
+        boolean book = flag(req.get("book"), true);
+        return found(games.move(id, text(req.get("move"), null), reply, limits(req), book), id);
+    }
+
+    @DeleteMapping("/games/{id}")
+    public void endGame(@PathVariable String id) {
+        if (!games.delete(id)) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "no game " + id);
+    }
+
+    // Open, expired and evicted game sessions, and ponder hits and misses
+    @GetMapping("/games/stats")
+    public Map<String, Object> gameStats() {
+        return games.stats();
+    }
+
+    private static <T> T found(T game, String id) {
+        if (game == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "no game " + id);
+        return game;
+    }
+
+    // depth/movetimeMs, and optionally a game clock: wtime, btime, winc, binc (ms) and movestogo.
+    // With a clock and no depth the time manager alone decides when to stop. Values may be
+    // numbers or strings (query parameters).
+    private static SearchLimits limits(Map<String, ?> req) {
+        long wtime = number(req.get("wtime"), 0);
+        long btime = number(req.get("btime"), 0);
+        boolean clock = wtime > 0 || btime > 0;
+        return new SearchLimits(
+            (int) number(req.get("depth"), clock ? AlphaBeta.MAX_DEPTH : 4),
+            number(req.get("movetimeMs"), 0),
+            wtime, btime,
+            number(req.get("winc"), 0),
+            number(req.get("binc"), 0),
+            (int) number(req.get("movestogo"), 0));
+    }
+
+    // Stream analysis as Server-Sent Events: an "info" event per completed iteration
+    // (depth, seldepth, scoreCp, nodes, nps, timeMs, hashfull, pv), then one "bestmove".
+    // GET so a browser EventSource can open it; closing the stream stops the search.
+    // Without depth or movetimeMs it runs until closed, capped at chess.analysis.timeout-ms.
+    @GetMapping(value = "/analyze", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter analyze(@RequestParam(defaultValue = com.cmt.chessbot.engine.Util.START_FEN) String fen,
+                              @RequestParam(defaultValue = "" + AlphaBeta.MAX_DEPTH) int depth,
+                              @RequestParam(defaultValue = "0") long movetimeMs,
+                              @RequestParam(defaultValue = "1") int threads,
+                              @RequestParam(required = false) String eval) {
+        long budget = movetimeMs > 0 ? Math.min(movetimeMs, analysisTimeoutMs) : analysisTimeoutMs;
+        SseEmitter emitter = new SseEmitter(analysisTimeoutMs + 5_000);
+        CompletableFuture<Map<String, Object>> search;
+        try {
+            search = service.analyze(fen, new SearchLimits(depth, budget, 0, 0, 0, 0, 0), threads, eval,
+                info -> {
+                    try {
+                        emitter.send(SseEmitter.event().name("info").data(info, MediaType.APPLICATION_JSON));
+                    } catch (IOException e) {
+                        throw new IllegalStateException("client went away", e);
+                    }
+                });
+        } catch (RejectedExecutionException e) {
+            // an EventSource accepts no JSON body, so only the status says why
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "too many analyses, retry later");
+        }
+        search.whenComplete((r, ex) -> {
+            if (ex != null) { emitter.completeWithError(ex); return; }
+            try {
+                emitter.send(SseEmitter.event().name("bestmove").data(r, MediaType.APPLICATION_JSON));
+                emitter.complete();
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+            }
+        });
+        emitter.onCompletion(() -> search.cancel(false));
+        emitter.onTimeout(() -> search.cancel(false));
+        emitter.onError(e -> search.cancel(false));
+        return emitter;
+    }
+
+    // Hit/miss counters and occupancy of the analysis cache
+    @GetMapping("/cache/stats")
+    public Map<String, Object> cacheStats() {
+        return service.cacheStats();
+    }
+
+    // Count leaf nodes to verify the move generator and measure its speed
+    @PostMapping("/perft")
+    public CompletableFuture<Map<String, Object>> perft(@RequestBody Map<String, Object> req) {
+        String fen = text(req.get("fen"), com.cmt.chessbot.engine.Util.START_FEN);
+        int depth = (int) number(req.get("depth"), 4);
+        boolean parallel = flag(req.get("parallel"), false);
+        int hashMb = (int) number(req.get("hashMb"), 0);
+        boolean divide = flag(req.get("divide"), false);
+        return service.perft(fen, depth, parallel, hashMb, divide);
     }
 }
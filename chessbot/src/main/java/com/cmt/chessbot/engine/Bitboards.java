@@ -0,0 +1,85 @@
+package com.cmt.chessbot.engine;
+
+// Square index is r*8+c with r=0 being rank 8, matching Move's (row, col) convention.
+// Bit 0 is a8, bit 63 is h1; "north" (towards rank 8) is a right shift by 8.
+public final class Bitboards {
+    private Bitboards() {}
+
+    public static final long FILE_A = 0x0101010101010101L;
+    public static final long FILE_H = FILE_A << 7;
+    public static final long NOT_A = ~FILE_A;
+    public static final long NOT_H = ~FILE_H;
+    public static final long NOT_AB = ~(FILE_A | (FILE_A << 1));
+    public static final long NOT_GH = ~(FILE_H | (FILE_H >>> 1));
+
+    public static final long ROW_0 = 0xFFL;        // rank 8
+    public static final long ROW_3 = 0xFFL << 24;  // rank 5
+    public static final long ROW_4 = 0xFFL << 32;  // rank 4
+    public static final long ROW_7 = 0xFFL << 56;  // rank 1
+
+    public static long bit(int sq){ return 1L << sq; }
+    public static int lsb(long b){ return Long.numberOfTrailingZeros(b); }
+    public static int count(long b){ return Long.bitCount(b); }
+
+    public static long north(long b){ return b >>> 8; }
+    public static long south(long b){ return b << 8; }
+    public static long east(long b){ return (b << 1) & NOT_A; }
+    public static long west(long b){ return (b >>> 1) & NOT_H; }
+    public static long northEast(long b){ return (b >>> 7) & NOT_A; }
+    public static long northWest(long b){ return (b >>> 9) & NOT_H; }
+    public static long southEast(long b){ return (b << 9) & NOT_A; }
+    public static long southWest(long b){ return (b << 7) & NOT_H; }
+
+    public static long pawnAttacks(long pawns, boolean white){
+        return white ? northEast(pawns) | northWest(pawns) : southEast(pawns) | southWest(pawns);
+    }
+
+    private static final long[] KNIGHT = new long[64];
+    private static final long[] KING = new long[64];
+    private static final long[][] PAWN = new long[2][64]; // [Piece color][square]
+
+    static {
+        for (int sq=0; sq<64; sq++){
+            long b = bit(sq);
+            KNIGHT[sq] = ((b >>> 17) & NOT_H) | ((b >>> 15) & NOT_A)
+                       | ((b >>> 10) & NOT_GH) | ((b >>> 6) & NOT_AB)
+                       | ((b << 17) & NOT_A) | ((b << 15) & NOT_H)
+                       | ((b << 10) & NOT_AB) | ((b << 6) & NOT_GH);
+            long h = east(b) | west(b) | b;
+            KING[sq] = (h | north(h) | south(h)) & ~b;
+            PAWN[Piece.WHITE][sq] = pawnAttacks(b, true);
+            PAWN[Piece.BLACK][sq] = pawnAttacks(b, false);
+        }
+    }
+
+    // BETWEEN[a][b]: squares strictly between a and b on a shared line, else 0.
+    // LINE[a][b]: the whole line through a and b (edge to edge), else 0.
+    private static final long[][] BETWEEN = new long[64][64];
+    private static final long[][] LINE = new long[64][64];
+
+    static {
+        for (int a=0; a<64; a++){
+            for (int b=0; b<64; b++){
+                if (a == b) continue;
+                long ab = bit(a) | bit(b);
+                if ((rookAttacks(a, 0) & bit(b)) != 0){
+                    BETWEEN[a][b] = rookAttacks(a, ab) & rookAttacks(b, ab);
+                    LINE[a][b] = (rookAttacks(a, 0) & rookAttacks(b, 0)) | ab;
+                } else if ((bishopAttacks(a, 0) & bit(b)) != 0){
+                    BETWEEN[a][b] = bishopAttacks(a, ab) & bishopAttacks(b, ab);
+                    LINE[a][b] = (bishopAttacks(a, 0) & bishopAttacks(b, 0)) | ab;
+                }
+            }
+        }
+    }
+
+    public static long between(int a, int b){ return BETWEEN[a][b]; }
+    public static long line(int a, int b){ return LINE[a][b]; }
+
+    public static long pawnAttacks(int sq, boolean white){ return PAWN[white ? Piece.WHITE : Piece.BLACK][sq]; }
+    public static long knightAttacks(int sq){ return KNIGHT[sq]; }
+    public static long kingAttacks(int sq){ return KING[sq]; }
+    public static long rookAttacks(int sq, long occ){ return Magics.rook(sq, occ); }
+    public static long bishopAttacks(int sq, long occ){ return Magics.bishop(sq, occ); }
+    public static long queenAttacks(int sq, long occ){ return Magics.rook(sq, occ) | Magics.bishop(sq, occ); }
+}
@@ -1,18 +1,55 @@
 package com.cmt.chessbot.engine;
 
-import java.util.ArrayDeque;
-import java.util.Deque;
+import com.cmt.chessbot.evaluation.Psqt;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.cmt.chessbot.engine.Piece.*;
 
 public class Board {
 
-    private final char[][] b = new char[8][8];
+    // Notified of every piece placed or lifted, including by make/undo; used by
+    // evaluators that keep their own incrementally updated state (NNUE accumulator).
+    public interface Listener {
+        void pieceAdded(int piece, int sq);
+        void pieceRemoved(int piece, int sq);
+    }
+
+    private final long[] pieces = new long[12]; // one bitboard per Piece index
+    private final long[] colors = new long[2];  // occupancy per color
+    private long occupied;
+    private final int[] squares = new int[64];  // piece on each square, for captures/undo
+    private final int[] kings = {-1, -1};       // king square per color, kept by put()
     private boolean whiteToMove;
     private int castling; // 1=K,2=Q,4=k,8=q
     private int epFile;   // -1 if none
     private int halfmoveClock;
     private int fullmoveNumber;
+    private long hash;     // Zobrist key, updated incrementally by make/undo
+    private int psqMg, psqEg, phase; // white-relative Psqt sums and game phase, kept by put/remove
+    private Listener listener;       // not copied: each searching thread attaches its own
+
+    private State[] history = newStates(16); // grows in pushState; a parsed board often never searches
+    private int historySize;
+
+    // castling rights kept when a move touches the square (king/rook origin or rook capture)
+    private static final int[] CASTLE_MASK = new int[64];
+    static {
+        Arrays.fill(CASTLE_MASK, 15);
+        CASTLE_MASK[60] = 15 & ~(1|2); // e1
+        CASTLE_MASK[56] = 15 & ~2;     // a1
+        CASTLE_MASK[63] = 15 & ~1;     // h1
+        CASTLE_MASK[4]  = 15 & ~(4|8); // e8
+        CASTLE_MASK[0]  = 15 & ~8;     // a8
+        CASTLE_MASK[7]  = 15 & ~4;     // h8
+    }
 
-    private final Deque<State> history = new ArrayDeque<>();
+    private static State[] newStates(int n){
+        State[] a = new State[n];
+        for (int i=0; i<n; i++) a[i] = new State();
+        return a;
+    }
 
     public static Board fromFEN(String fen){
         Board bd = new Board();
@@ -20,196 +57,458 @@ public class Board {
         return bd;
     }
 
+    // Independent copy, including the undo history, for searching on another thread.
+    public Board copy(){
+        Board c = new Board();
+        System.arraycopy(pieces, 0, c.pieces, 0, 12);
+        System.arraycopy(colors, 0, c.colors, 0, 2);
+        System.arraycopy(squares, 0, c.squares, 0, 64);
+        c.kings[WHITE] = kings[WHITE];
+        c.kings[BLACK] = kings[BLACK];
+        c.occupied = occupied;
+        c.whiteToMove = whiteToMove;
+        c.castling = castling;
+        c.epFile = epFile;
+        c.halfmoveClock = halfmoveClock;
+        c.fullmoveNumber = fullmoveNumber;
+        c.hash = hash;
+        c.psqMg = psqMg; c.psqEg = psqEg; c.phase = phase;
+        if (c.history.length < history.length) c.history = newStates(history.length);
+        for (int i=0; i<historySize; i++){
+            State st = history[i];
+            c.history[i].set(st.castling, st.epFile, st.halfmoveClock, st.fullmoveNumber, st.captured, st.hash);
+        }
+        c.historySize = historySize;
+        return c;
+    }
+
+    // Replaces the position with count pieces (pieces[i] on sqs[i]) and no castling or
+    // en passant rights; for walking many positions without parsing FEN (tablebase generation).
+    public void set(int[] pieces, int[] sqs, int count, boolean whiteToMove){
+        clear();
+        for (int i=0; i<count; i++) put(pieces[i], sqs[i]);
+        this.whiteToMove = whiteToMove;
+        castling = 0;
+        epFile = -1;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        historySize = 0;
+        hash = computeHash();
+    }
+
+    private void clear(){
+        Arrays.fill(pieces, 0L);
+        Arrays.fill(colors, 0L);
+        Arrays.fill(squares, NONE);
+        kings[WHITE] = kings[BLACK] = -1;
+        occupied = 0L;
+        psqMg = psqEg = phase = 0;
+    }
+
+    // One pass over the string, no splitting. The clocks may be left off (0 and 1).
     private void loadFEN(String fen){
-        String[] parts = fen.trim().split("\\s+");
-        String[] rows = parts[0].split("/");
-        for (int r=0; r<8; r++){
-            int c=0;
-            for (char ch : rows[r].toCharArray()){
-                if (Character.isDigit(ch)){
-                    int n = ch - '0';
-                    for (int k=0;k<n;k++) b[r][c++]='.';
-                } else {
-                    b[r][c++] = ch;
-                }
+        int n = fen.length(), i = skipSpaces(fen, 0);
+        clear();
+        int r = 0, c = 0;
+        for (; i < n && fen.charAt(i) != ' '; i++){
+            char ch = fen.charAt(i);
+            if (ch == '/'){
+                if (c != 8) throw badFEN(fen, "rank " + (8 - r) + " has " + c + " squares");
+                r++; c = 0;
+            } else if (ch >= '1' && ch <= '8'){
+                c += ch - '0';
+            } else {
+                int p = Piece.fromChar(ch);
+                if (p < 0) throw badFEN(fen, "unknown piece '" + ch + "'");
+                if (r > 7 || c > 7) throw badFEN(fen, "too many squares");
+                put(p, r*8 + c++);
             }
+            if (c > 8) throw badFEN(fen, "rank " + (8 - r) + " has more than 8 squares");
         }
-        whiteToMove = parts[1].equals("w");
+        if (r != 7 || c != 8) throw badFEN(fen, "expected 8 ranks of 8 squares");
+        String kings = kingCount();
+        if (kings != null) throw badFEN(fen, kings);
+
+        i = skipSpaces(fen, i);
+        if (i >= n || (fen.charAt(i) != 'w' && fen.charAt(i) != 'b')) throw badFEN(fen, "expected w or b to move");
+        whiteToMove = fen.charAt(i++) == 'w';
+
+        i = skipSpaces(fen, i);
         castling = 0;
-        if (parts[2].contains("K")) castling |= 1;
-        if (parts[2].contains("Q")) castling |= 2;
-        if (parts[2].contains("k")) castling |= 4;
-        if (parts[2].contains("q")) castling |= 8;
-        epFile = parts[3].equals("-") ? -1 : (parts[3].charAt(0) - 'a');
-        halfmoveClock = Integer.parseInt(parts[4]);
-        fullmoveNumber = Integer.parseInt(parts[5]);
-        history.clear();
+        if (i < n && fen.charAt(i) == '-') i++;
+        else for (; i < n && fen.charAt(i) != ' '; i++){
+            switch (fen.charAt(i)){
+                case 'K' -> castling |= 1;
+                case 'Q' -> castling |= 2;
+                case 'k' -> castling |= 4;
+                case 'q' -> castling |= 8;
+                default -> throw badFEN(fen, "bad castling rights");
+            }
+        }
+
+        i = skipSpaces(fen, i);
+        epFile = -1;
+        if (i < n && fen.charAt(i) == '-') i++;
+        else if (i + 1 < n && fen.charAt(i) >= 'a' && fen.charAt(i) <= 'h'
+                 && (fen.charAt(i+1) == '3' || fen.charAt(i+1) == '6')){ // older toFEN wrote rank 3 for both sides
+            epFile = fen.charAt(i) - 'a';
+            i += 2;
+        } else throw badFEN(fen, "bad en passant square");
+
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        i = skipSpaces(fen, i);
+        if (i < n){
+            int end = nextSpace(fen, i);
+            halfmoveClock = clock(fen, i, end);
+            i = skipSpaces(fen, end);
+            if (i < n){
+                end = nextSpace(fen, i);
+                fullmoveNumber = Math.max(1, clock(fen, i, end));
+                if (skipSpaces(fen, end) < n) throw badFEN(fen, "unexpected text after the move number");
+            }
+        }
+        dropImpossibleRights();
+        historySize = 0;
+        hash = computeHash();
+    }
+
+    private static int skipSpaces(String s, int i){
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+
+    private static int nextSpace(String s, int i){
+        while (i < s.length() && !Character.isWhitespace(s.charAt(i))) i++;
+        return i;
+    }
+
+    private static int clock(String fen, int from, int to){
+        if (to - from > 6) throw badFEN(fen, "move counter too large");
+        int v = 0;
+        for (int i=from; i<to; i++){
+            char ch = fen.charAt(i);
+            if (ch < '0' || ch > '9') throw badFEN(fen, "bad move counter");
+            v = v * 10 + (ch - '0');
+        }
+        return v;
+    }
+
+    // null when each side has exactly one king; move generation and check detection need it
+    private String kingCount(){
+        int white = Long.bitCount(pieces[WHITE*6 + KING]), black = Long.bitCount(pieces[BLACK*6 + KING]);
+        if (white == 1 && black == 1) return null;
+        return white + " white and " + black + " black kings";
+    }
+
+    // Castling rights need the king and that rook on their home squares, and an en passant file
+    // needs the enemy pawn that just passed an empty square; make() assumes both are there.
+    private void dropImpossibleRights(){
+        if (squares[60] != WHITE*6 + KING) castling &= ~(1|2);
+        if (squares[63] != WHITE*6 + ROOK) castling &= ~1;
+        if (squares[56] != WHITE*6 + ROOK) castling &= ~2;
+        if (squares[4] != BLACK*6 + KING) castling &= ~(4|8);
+        if (squares[7] != BLACK*6 + ROOK) castling &= ~4;
+        if (squares[0] != BLACK*6 + ROOK) castling &= ~8;
+        if (epFile != -1){
+            int target = whiteToMove ? 16 + epFile : 40 + epFile, victim = whiteToMove ? target + 8 : target - 8;
+            if (squares[target] != NONE || squares[victim] != (whiteToMove ? BLACK : WHITE)*6 + PAWN) epFile = -1;
+        }
+    }
+
+    private static IllegalArgumentException badFEN(String fen, String why){
+        return new IllegalArgumentException("bad FEN (" + why + "): " + fen);
+    }
+
+    private long computeHash(){
+        long h = 0;
+        for (int sq=0; sq<64; sq++) if (squares[sq] != NONE) h ^= Zobrist.PIECE[squares[sq]][sq];
+        h ^= Zobrist.CASTLING[castling];
+        if (epFile != -1) h ^= Zobrist.EP_FILE[epFile];
+        if (!whiteToMove) h ^= Zobrist.SIDE;
+        return h;
     }
 
     public String toFEN(){
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(90);
         for (int r=0;r<8;r++){
             int run=0;
             for (int c=0;c<8;c++){
-                char p = b[r][c];
-                if (p=='.') run++;
+                int p = squares[r*8 + c];
+                if (p==NONE) run++;
                 else{
-                    if (run>0){ sb.append(run); run=0; }
-                    sb.append(p);
+                    if (run>0){ sb.append((char)('0'+run)); run=0; }
+                    sb.append(Piece.toChar(p));
                 }
             }
-            if (run>0) sb.append(run);
+            if (run>0) sb.append((char)('0'+run));
             if (r<7) sb.append('/');
         }
         sb.append(whiteToMove? " w " : " b ");
-        String cr="";
-        if ((castling&1)!=0) cr+="K";
-        if ((castling&2)!=0) cr+="Q";
-        if ((castling&4)!=0) cr+="k";
-        if ((castling&8)!=0) cr+="q";
-        sb.append(cr.isEmpty()? "-" : cr).append(" ");
-        if (epFile==-1) sb.append("- "); else sb.append((char)('a'+epFile)).append('3').append(" ");
-        sb.append(halfmoveClock).append(" ").append(fullmoveNumber);
+        if (castling==0) sb.append('-');
+        if ((castling&1)!=0) sb.append('K');
+        if ((castling&2)!=0) sb.append('Q');
+        if ((castling&4)!=0) sb.append('k');
+        if ((castling&8)!=0) sb.append('q');
+        sb.append(' ');
+        // the square the pawn passed over: rank 6 after black's double push, rank 3 after white's
+        if (epFile==-1) sb.append('-'); else sb.append((char)('a'+epFile)).append(whiteToMove ? '6' : '3');
+        sb.append(' ').append(halfmoveClock).append(' ').append(fullmoveNumber);
         return sb.toString();
     }
 
-    public char[][] board(){ return b; }
+    // Packed form, PACKED_BYTES big-endian bytes:
+    //   0..7    occupancy bitboard (bit sq, sq = rank-8-first as everywhere here)
+    //   8..23   the piece on each occupied square in square order, a 4-bit Piece index each,
+    //           high nibble first; unused nibbles are 0
+    //   24      bit 0 black to move, bits 1..4 castling rights
+    //   25      en passant file + 1, 0 = none
+    //   26..27  halfmove clock, 28..29 fullmove number (unsigned)
+    //   30..31  reserved, 0
+    public static final int PACKED_BYTES = 32;
+
+    // Writes the position at out's position and advances it by PACKED_BYTES.
+    public void pack(ByteBuffer out){
+        if (Long.bitCount(occupied) > 32) throw new IllegalArgumentException("more than 32 pieces");
+        int base = out.position();
+        out.putLong(base, occupied);
+        int i = 0, nibbles = 0;
+        for (long bb = occupied; bb != 0; bb &= bb - 1, i++){
+            nibbles = nibbles << 4 | squares[Long.numberOfTrailingZeros(bb)];
+            if ((i & 1) == 1) out.put(base + 8 + (i >> 1), (byte) nibbles);
+        }
+        if ((i & 1) == 1) out.put(base + 8 + (i >> 1), (byte) (nibbles << 4));
+        for (i = (i + 1) >> 1; i < 16; i++) out.put(base + 8 + i, (byte) 0);
+        out.put(base + 24, (byte) ((whiteToMove ? 0 : 1) | castling << 1));
+        out.put(base + 25, (byte) (epFile + 1));
+        out.putShort(base + 26, (short) Math.min(halfmoveClock, 0xFFFF));
+        out.putShort(base + 28, (short) Math.min(fullmoveNumber, 0xFFFF));
+        out.putShort(base + 30, (short) 0);
+        out.position(base + PACKED_BYTES);
+    }
+
+    // Reads a position written by pack() at in's position and advances it by PACKED_BYTES.
+    public static Board unpack(ByteBuffer in){
+        if (in.remaining() < PACKED_BYTES) throw new IllegalArgumentException("packed position needs " + PACKED_BYTES + " bytes");
+        int base = in.position();
+        long occ = in.getLong(base);
+        if (Long.bitCount(occ) > 32) throw new IllegalArgumentException("bad packed position: more than 32 pieces");
+        Board bd = new Board();
+        bd.clear();
+        int i = 0;
+        for (long bb = occ; bb != 0; bb &= bb - 1, i++){
+            int b = in.get(base + 8 + (i >> 1));
+            int p = ((i & 1) == 0 ? b >> 4 : b) & 15;
+            if (p > 11) throw new IllegalArgumentException("bad packed position: piece " + p);
+            bd.put(p, Long.numberOfTrailingZeros(bb));
+        }
+        String kings = bd.kingCount();
+        if (kings != null) throw new IllegalArgumentException("bad packed position: " + kings);
+        int flags = in.get(base + 24), ep = in.get(base + 25);
+        if (ep < 0 || ep > 8) throw new IllegalArgumentException("bad packed position: en passant file " + ep);
+        bd.whiteToMove = (flags & 1) == 0;
+        bd.castling = flags >> 1 & 15;
+        bd.epFile = ep - 1;
+        bd.halfmoveClock = Short.toUnsignedInt(in.getShort(base + 26));
+        bd.fullmoveNumber = Math.max(1, Short.toUnsignedInt(in.getShort(base + 28)));
+        bd.dropImpossibleRights();
+        bd.historySize = 0;
+        bd.hash = bd.computeHash();
+        in.position(base + PACKED_BYTES);
+        return bd;
+    }
+
+    public long pieces(int piece){ return pieces[piece]; }
+    public long pieces(int color, int type){ return pieces[color*6 + type]; }
+    public long colorBB(int color){ return colors[color]; }
+    public long occupied(){ return occupied; }
+    public int pieceAt(int sq){ return squares[sq]; }
     public boolean whiteToMove(){ return whiteToMove; }
     public int getCastling(){ return castling; }
     public int getEpFile(){ return epFile; }
     public int getHalfmoveClock(){ return halfmoveClock; }
     public int getFullmoveNumber(){ return fullmoveNumber; }
+    public long hash(){ return hash; }
+    public int psqMg(){ return psqMg; }
+    public int psqEg(){ return psqEg; }
+    public int phase(){ return phase; }
+
+    public void setListener(Listener l){ listener = l; }
+
+    private void put(int p, int sq){
+        long bit = 1L << sq;
+        pieces[p] |= bit;
+        colors[Piece.color(p)] |= bit;
+        occupied |= bit;
+        squares[sq] = p;
+        hash ^= Zobrist.PIECE[p][sq];
+        psqMg += Psqt.MG[p][sq]; psqEg += Psqt.EG[p][sq]; phase += Psqt.PHASE[p];
+        if (Piece.type(p) == KING) kings[Piece.color(p)] = sq;
+        if (listener != null) listener.pieceAdded(p, sq);
+    }
+
+    private void remove(int sq){
+        int p = squares[sq];
+        long mask = ~(1L << sq);
+        pieces[p] &= mask;
+        colors[Piece.color(p)] &= mask;
+        occupied &= mask;
+        squares[sq] = NONE;
+        hash ^= Zobrist.PIECE[p][sq];
+        psqMg -= Psqt.MG[p][sq]; psqEg -= Psqt.EG[p][sq]; phase -= Psqt.PHASE[p];
+        if (listener != null) listener.pieceRemoved(p, sq);
+    }
+
+    public void make(Move m){ make(m.encoded()); }
+    public void undo(Move m){ undo(m.encoded()); }
 
-    public void make(Move m){
-        char captured = b[m.tr][m.tc];
-        history.push(new State(castling, epFile, halfmoveClock, fullmoveNumber, captured));
+    public void make(int m){
+        int from = Move.from(m), to = Move.to(m), flags = Move.flags(m);
+        int piece = squares[from];
+        int captured = squares[to];
+        pushState(captured);
 
-        if (Character.toLowerCase(m.piece)=='p' || captured!='.') halfmoveClock = 0;
+        if (Piece.type(piece)==PAWN || captured!=NONE) halfmoveClock = 0;
         else halfmoveClock++;
         if (!whiteToMove) fullmoveNumber++;
 
+        if (epFile != -1) hash ^= Zobrist.EP_FILE[epFile];
         epFile = -1;
 
-        if ((m.flags & Move.EN_PASSANT) != 0){
-            int dir = Util.isWhite(m.piece) ? 1 : -1;
-            b[m.tr + dir][m.tc] = '.';
+        if (captured != NONE) remove(to);
+        if ((flags & Move.EN_PASSANT) != 0){
+            remove(whiteToMove ? to + 8 : to - 8);
         }
 
-        b[m.tr][m.tc] = (m.flags & Move.PROMOTION) != 0 ? m.promo : m.piece;
-        b[m.fr][m.fc] = '.';
-
-        if ((m.flags & Move.CASTLE) != 0){
-            if (m.tc == 6){
-                int r = m.tr;
-                b[r][5] = b[r][7];
-                b[r][7] = '.';
-            } else if (m.tc == 2){
-                int r = m.tr;
-                b[r][3] = b[r][0];
-                b[r][0] = '.';
+        remove(from);
+        put((flags & Move.PROMOTION) != 0 ? Move.promo(m) : piece, to);
+
+        if ((flags & Move.CASTLE) != 0){
+            if ((to & 7) == 6){
+                put(squares[to+1], to-1);
+                remove(to+1);
+            } else {
+                put(squares[to-2], to+1);
+                remove(to-2);
             }
         }
 
-        if ((m.flags & Move.DOUBLE_PAWN) != 0){
-            epFile = m.fc;
+        if ((flags & Move.DOUBLE_PAWN) != 0){
+            epFile = from & 7;
+            hash ^= Zobrist.EP_FILE[epFile];
         }
 
-        // update castling rights
-        if (m.piece=='K') castling &= ~(1|2);
-        if (m.piece=='k') castling &= ~(4|8);
-        if (m.piece=='R' && m.fr==7 && m.fc==0) castling &= ~2;
-        if (m.piece=='R' && m.fr==7 && m.fc==7) castling &= ~1;
-        if (m.piece=='r' && m.fr==0 && m.fc==0) castling &= ~8;
-        if (m.piece=='r' && m.fr==0 && m.fc==7) castling &= ~4;
-
-        if (captured=='R' && m.tr==7 && m.tc==0) castling &= ~2;
-        if (captured=='R' && m.tr==7 && m.tc==7) castling &= ~1;
-        if (captured=='r' && m.tr==0 && m.tc==0) castling &= ~8;
-        if (captured=='r' && m.tr==0 && m.tc==7) castling &= ~4;
+        hash ^= Zobrist.CASTLING[castling];
+        castling &= CASTLE_MASK[from] & CASTLE_MASK[to];
+        hash ^= Zobrist.CASTLING[castling];
 
         whiteToMove = !whiteToMove;
+        hash ^= Zobrist.SIDE;
     }
 
-    public void undo(Move m){
-        State st = history.pop();
+    public void undo(int m){
+        State st = history[--historySize];
         whiteToMove = !whiteToMove;
+        int from = Move.from(m), to = Move.to(m), flags = Move.flags(m);
+        int us = whiteToMove ? WHITE : BLACK;
 
-        if ((m.flags & Move.CASTLE) != 0){
-            if (m.tc==6){
-                int r=m.tr;
-                b[r][7] = b[r][5]; b[r][5]='.';
-            } else if (m.tc==2){
-                int r=m.tr;
-                b[r][0] = b[r][3]; b[r][3]='.';
+        if ((flags & Move.CASTLE) != 0){
+            if ((to & 7) == 6){
+                put(squares[to-1], to+1); remove(to-1);
+            } else {
+                put(squares[to+1], to-2); remove(to+1);
             }
         }
 
-        b[m.fr][m.fc] = m.piece;
-        b[m.tr][m.tc] = st.captured;
+        int moved = (flags & Move.PROMOTION) != 0 ? Piece.make(us, PAWN) : squares[to];
+        remove(to);
+        put(moved, from);
+        if (st.captured != NONE) put(st.captured, to);
 
-        if ((m.flags & Move.EN_PASSANT) != 0){
-            int dir = Util.isWhite(m.piece)? 1 : -1;
-            b[m.tr + dir][m.tc] = (char)(Util.isWhite(m.piece)? 'p' : 'P');
-            b[m.tr][m.tc] = '.';
+        if ((flags & Move.EN_PASSANT) != 0){
+            put(Piece.make(us ^ 1, PAWN), whiteToMove ? to + 8 : to - 8);
         }
 
         this.castling = st.castling;
         this.epFile = st.epFile;
         this.halfmoveClock = st.halfmoveClock;
         this.fullmoveNumber = st.fullmoveNumber;
+        this.hash = st.hash;
     }
 
-    public boolean squareAttacked(int r, int c, boolean byWhite){
-        int dir = byWhite? -1 : 1;
-        int pr = r + dir;
-        if (Util.inBounds(pr, c-1) && b[pr][c-1] == (byWhite? 'P':'p')) return true;
-        if (Util.inBounds(pr, c+1) && b[pr][c+1] == (byWhite? 'P':'p')) return true;
-
-        int[][] kdirs = {{2,1},{2,-1},{-2,1},{-2,-1},{1,2},{1,-2},{-1,2},{-1,-2}};
-        for (int[] d : kdirs){
-            int nr=r+d[0], nc=c+d[1];
-            if (Util.inBounds(nr,nc) && b[nr][nc] == (byWhite? 'N':'n')) return true;
-        }
+    // Passes the turn, for null-move pruning. Only the side, en passant file and clocks change.
+    public void makeNull(){
+        pushState(NONE);
+        halfmoveClock++;
+        if (epFile != -1) hash ^= Zobrist.EP_FILE[epFile];
+        epFile = -1;
+        whiteToMove = !whiteToMove;
+        hash ^= Zobrist.SIDE;
+    }
 
-        for (int dr=-1; dr<=1; dr++) for (int dc=-1; dc<=1; dc++){
-            if (dr==0 && dc==0) continue;
-            int nr=r+dr, nc=c+dc;
-            if (Util.inBounds(nr,nc) && b[nr][nc] == (byWhite? 'K':'k')) return true;
-        }
+    public void undoNull(){
+        State st = history[--historySize];
+        whiteToMove = !whiteToMove;
+        this.epFile = st.epFile;
+        this.halfmoveClock = st.halfmoveClock;
+        this.hash = st.hash;
+    }
 
-        int[][] bdirs = {{1,1},{1,-1},{-1,1},{-1,-1}};
-        for (int[] d: bdirs){
-            int nr=r+d[0], nc=c+d[1];
-            while (Util.inBounds(nr,nc)){
-                char p = b[nr][nc];
-                if (p!='.'){
-                    if (byWhite? (p=='B'||p=='Q') : (p=='b'||p=='q')) return true;
-                    break;
-                }
-                nr+=d[0]; nc+=d[1];
-            }
+    private void pushState(int captured){
+        if (historySize == history.length){
+            State[] grown = Arrays.copyOf(history, historySize * 2);
+            for (int i=historySize; i<grown.length; i++) grown[i] = new State();
+            history = grown;
         }
+        history[historySize++].set(castling, epFile, halfmoveClock, fullmoveNumber, captured, hash);
+    }
 
-        int[][] rdirs = {{1,0},{-1,0},{0,1},{0,-1}};
-        for (int[] d: rdirs){
-            int nr=r+d[0], nc=c+d[1];
-            while (Util.inBounds(nr,nc)){
-                char p = b[nr][nc];
-                if (p!='.'){
-                    if (byWhite? (p=='R'||p=='Q') : (p=='r'||p=='q')) return true;
-                    break;
-                }
-                nr+=d[0]; nc+=d[1];
-            }
-        }
+    public boolean squareAttacked(int r, int c, boolean byWhite){
+        return squareAttacked(r*8 + c, byWhite);
+    }
 
-        return false;
+    public boolean squareAttacked(int sq, boolean byWhite){
+        int them = byWhite ? WHITE : BLACK;
+        // a pawn of ours on sq would attack exactly the squares their pawns attack sq from
+        if ((Bitboards.pawnAttacks(sq, !byWhite) & pieces(them, PAWN)) != 0) return true;
+        if ((Bitboards.knightAttacks(sq) & pieces(them, KNIGHT)) != 0) return true;
+        if ((Bitboards.kingAttacks(sq) & pieces(them, KING)) != 0) return true;
+        long queens = pieces(them, QUEEN);
+        if ((Bitboards.bishopAttacks(sq, occupied) & (pieces(them, BISHOP) | queens)) != 0) return true;
+        return (Bitboards.rookAttacks(sq, occupied) & (pieces(them, ROOK) | queens)) != 0;
     }
 
-    public int[] kingSquare(boolean white){
-        for (int r=0;r<8;r++) for (int c=0;c<8;c++){
-            if (b[r][c] == (white? 'K':'k')) return new int[]{r,c};
-        }
-        return null;
+    // Pieces of the given color attacking sq, with sliders seeing through to occ.
+    public long attackersTo(int sq, int color, long occ){
+        long queens = pieces(color, QUEEN);
+        return (Bitboards.pawnAttacks(sq, color != WHITE) & pieces(color, PAWN))
+             | (Bitboards.knightAttacks(sq) & pieces(color, KNIGHT))
+             | (Bitboards.kingAttacks(sq) & pieces(color, KING))
+             | (Bitboards.bishopAttacks(sq, occ) & (pieces(color, BISHOP) | queens))
+             | (Bitboards.rookAttacks(sq, occ) & (pieces(color, ROOK) | queens));
+    }
+
+    public boolean inCheck(){
+        return squareAttacked(kings[whiteToMove ? WHITE : BLACK], !whiteToMove);
+    }
+
+    public int kingSquare(boolean white){
+        return kings[white ? WHITE : BLACK];
+    }
+
+    // How often the current position occurred earlier since the last capture or pawn move.
+    // Only the moves made on this board count: a position set up from FEN has no past.
+    public int repetitions(){
+        int n = 0;
+        for (int i=historySize-2, stop=Math.max(0, historySize-halfmoveClock); i>=stop; i-=2)
+            if (history[i].hash == hash) n++;
+        return n;
+    }
+
+    // The search treats a single repetition as a draw: whatever avoided it before can do so again.
+    public boolean isRepetition(){
+        for (int i=historySize-2, stop=Math.max(0, historySize-halfmoveClock); i>=stop; i-=2)
+            if (history[i].hash == hash) return true;
+        return false;
     }
 }
@@ -0,0 +1,127 @@
+package com.cmt.chessbot.engine;
+
+// Magic-bitboard slider attack tables, built once when the class loads.
+// For each square the relevant blocker mask is multiplied by a magic and shifted
+// down to an index into a flat attack table. Magics are searched with a fixed seed,
+// so table layout is deterministic between runs.
+final class Magics {
+    private Magics() {}
+
+    private static final long[] ROOK_MASK = new long[64];
+    private static final long[] ROOK_MAGIC = new long[64];
+    private static final int[] ROOK_SHIFT = new int[64];
+    private static final int[] ROOK_OFFSET = new int[64];
+    private static final long[] ROOK_TABLE;
+
+    private static final long[] BISHOP_MASK = new long[64];
+    private static final long[] BISHOP_MAGIC = new long[64];
+    private static final int[] BISHOP_SHIFT = new int[64];
+    private static final int[] BISHOP_OFFSET = new int[64];
+    private static final long[] BISHOP_TABLE;
+
+    private static long seed = 0x9E3779B97F4A7C15L;
+
+    static {
+        ROOK_TABLE = build(true, ROOK_MASK, ROOK_MAGIC, ROOK_SHIFT, ROOK_OFFSET);
+        BISHOP_TABLE = build(false, BISHOP_MASK, BISHOP_MAGIC, BISHOP_SHIFT, BISHOP_OFFSET);
+    }
+
+    static long rook(int sq, long occ){
+        return ROOK_TABLE[ROOK_OFFSET[sq] + (int)(((occ & ROOK_MASK[sq]) * ROOK_MAGIC[sq]) >>> ROOK_SHIFT[sq])];
+    }
+
+    static long bishop(int sq, long occ){
+        return BISHOP_TABLE[BISHOP_OFFSET[sq] + (int)(((occ & BISHOP_MASK[sq]) * BISHOP_MAGIC[sq]) >>> BISHOP_SHIFT[sq])];
+    }
+
+    private static long[] build(boolean rook, long[] masks, long[] magics, int[] shifts, int[] offsets){
+        int size = 0;
+        for (int sq=0; sq<64; sq++){
+            masks[sq] = relevantMask(sq, rook);
+            int bits = Long.bitCount(masks[sq]);
+            shifts[sq] = 64 - bits;
+            offsets[sq] = size;
+            size += 1 << bits;
+        }
+        long[] table = new long[size];
+        for (int sq=0; sq<64; sq++){
+            long mask = masks[sq];
+            int n = 1 << Long.bitCount(mask);
+            long[] occs = new long[n], atts = new long[n];
+            long subset = 0;
+            for (int i=0; i<n; i++){
+                occs[i] = subset;
+                atts[i] = rook ? slowRook(sq, subset) : slowBishop(sq, subset);
+                subset = (subset - mask) & mask; // carry-rippler: next subset of mask
+            }
+            magics[sq] = findMagic(occs, atts, shifts[sq], table, offsets[sq]);
+        }
+        return table;
+    }
+
+    private static long findMagic(long[] occs, long[] atts, int shift, long[] table, int offset){
+        int n = occs.length;
+        long[] used = new long[n];
+        int[] epoch = new int[n];
+        for (int attempt = 1; ; attempt++){
+            long magic = random() & random() & random();
+            boolean ok = true;
+            for (int i=0; i<n && ok; i++){
+                int idx = (int)((occs[i] * magic) >>> shift);
+                if (epoch[idx] != attempt){
+                    epoch[idx] = attempt;
+                    used[idx] = atts[i];
+                } else if (used[idx] != atts[i]){
+                    ok = false;
+                }
+            }
+            if (ok){
+                System.arraycopy(used, 0, table, offset, n);
+                return magic;
+            }
+        }
+    }
+
+    private static long random(){
+        seed ^= seed << 13; seed ^= seed >>> 7; seed ^= seed << 17;
+        return seed;
+    }
+
+    // blocker squares that can change the attack set; board edges never matter
+    private static long relevantMask(int sq, boolean rook){
+        int r = sq >> 3, c = sq & 7;
+        long m = 0;
+        if (rook){
+            for (int i=r+1; i<7; i++) m |= 1L << (i*8 + c);
+            for (int i=r-1; i>0; i--) m |= 1L << (i*8 + c);
+            for (int i=c+1; i<7; i++) m |= 1L << (r*8 + i);
+            for (int i=c-1; i>0; i--) m |= 1L << (r*8 + i);
+        } else {
+            for (int i=r+1, j=c+1; i<7 && j<7; i++, j++) m |= 1L << (i*8 + j);
+            for (int i=r+1, j=c-1; i<7 && j>0; i++, j--) m |= 1L << (i*8 + j);
+            for (int i=r-1, j=c+1; i>0 && j<7; i--, j++) m |= 1L << (i*8 + j);
+            for (int i=r-1, j=c-1; i>0 && j>0; i--, j--) m |= 1L << (i*8 + j);
+        }
+        return m;
+    }
+
+    private static long slowRook(int sq, long occ){
+        return ray(sq, occ, 1, 0) | ray(sq, occ, -1, 0) | ray(sq, occ, 0, 1) | ray(sq, occ, 0, -1);
+    }
+
+    private static long slowBishop(int sq, long occ){
+        return ray(sq, occ, 1, 1) | ray(sq, occ, 1, -1) | ray(sq, occ, -1, 1) | ray(sq, occ, -1, -1);
+    }
+
+    private static long ray(int sq, long occ, int dr, int dc){
+        long att = 0;
+        int r = (sq >> 3) + dr, c = (sq & 7) + dc;
+        while (Util.inBounds(r, c)){
+            long b = 1L << (r*8 + c);
+            att |= b;
+            if ((occ & b) != 0) break;
+            r += dr; c += dc;
+        }
+        return att;
+    }
+}
@@ -1,5 +1,8 @@
 package com.cmt.chessbot.engine;
 
+// API/UCI-facing move. The engine itself works on moves packed into an int:
+//   bits 0-5 from square, 6-11 to square, 12-15 moving Piece, 16-19 promotion Piece,
+//   20-24 flags (the constants below). Squares are r*8+c as in Bitboards.
 public class Move {
     public static final int CAPTURE = 1;
     public static final int PROMOTION = 2;
@@ -7,6 +10,8 @@ public class Move {
     public static final int CASTLE = 8;
     public static final int DOUBLE_PAWN = 16;
 
+    public static final int NONE = 0; // never a real move: from == to
+
     public final int fr, fc, tr, tc;
     public final char piece; // moving piece before move
     public final char promo; // 'Q','R','B','N' or 0
@@ -17,6 +22,33 @@ public class Move {
         this.piece = piece; this.promo = promo; this.flags = flags;
     }
 
+    public static int encode(int from, int to, int piece, int promo, int flags){
+        return from | (to << 6) | (piece << 12) | (promo << 16) | (flags << 20);
+    }
+
+    public static int from(int m){ return m & 63; }
+    public static int to(int m){ return (m >>> 6) & 63; }
+    public static int piece(int m){ return (m >>> 12) & 15; }
+    public static int promo(int m){ return (m >>> 16) & 15; }
+    public static int flags(int m){ return m >>> 20; }
+
+    public static Move of(int m){
+        int from = from(m), to = to(m), flags = flags(m);
+        char promo = (flags & PROMOTION) != 0 ? Piece.toChar(promo(m)) : 0;
+        return new Move(from >> 3, from & 7, to >> 3, to & 7, Piece.toChar(piece(m)), promo, flags);
+    }
+
+    public int encoded(){
+        int promoPiece = promo != 0 ? Piece.fromChar(promo) : 0;
+        return encode(fr*8 + fc, tr*8 + tc, Piece.fromChar(piece), promoPiece, flags);
+    }
+
+    public static String uci(int m){
+        int from = from(m), to = to(m);
+        char promo = (flags(m) & PROMOTION) != 0 ? Piece.toChar(promo(m)) : 0;
+        return Util.moveToUci(from >> 3, from & 7, to >> 3, to & 7, promo);
+    }
+
     public String uci() {
         return Util.moveToUci(fr, fc, tr, tc, promo);
     }
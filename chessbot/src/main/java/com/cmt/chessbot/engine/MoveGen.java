@@ -3,161 +3,246 @@ package com.cmt.chessbot.engine;
 import java.util.ArrayList;
 import java.util.List;
 
+import static com.cmt.chessbot.engine.Piece.*;
+
+// Legal move generation from check and pin masks: moves are only emitted if they
+// are legal, so callers never probe with make/undo.
 public class MoveGen {
 
+    public static final int MAX_MOVES = 256; // upper bound on moves in any position
+
+    private static final int ALL = 0, NOISY = 1, QUIET = 2;
+
+    // Convenience for API callers; the search uses legal(Board, int[]) with its own buffers.
     public static List<Move> legalMoves(Board bd){
-        List<Move> pseudo = pseudoLegal(bd);
-        List<Move> legal = new ArrayList<>(pseudo.size());
-        for (Move m : pseudo){
-            bd.make(m);
-            int[] king = bd.kingSquare(!bd.whiteToMove());
-            boolean inCheck = bd.squareAttacked(king[0], king[1], bd.whiteToMove());
-            bd.undo(m);
-            if (!inCheck) legal.add(m);
-        }
-        return legal;
+        int[] buf = new int[MAX_MOVES];
+        int n = legal(bd, buf);
+        List<Move> out = new ArrayList<>(n);
+        for (int i=0; i<n; i++) out.add(Move.of(buf[i]));
+        return out;
+    }
+
+    // Writes the legal moves into buf and returns how many there are.
+    public static int legal(Board bd, int[] buf){
+        return generate(bd, buf, ALL);
+    }
+
+    // Legal captures and promotions only, for quiescence search.
+    public static int legalNoisy(Board bd, int[] buf){
+        return generate(bd, buf, NOISY);
     }
 
-    public static List<Move> pseudoLegal(Board bd){
-        char[][] b = bd.board();
+    // Legal moves that legalNoisy leaves out: non-capturing, non-promoting moves and castling.
+    public static int legalQuiet(Board bd, int[] buf){
+        return generate(bd, buf, QUIET);
+    }
+
+    private static int generate(Board bd, int[] buf, int mode){
         boolean white = bd.whiteToMove();
-        List<Move> out = new ArrayList<>(64);
-        for (int r=0;r<8;r++) for (int c=0;c<8;c++){
-            char p = b[r][c];
-            if (p=='.' || (white != Util.isWhite(p))) continue;
-            switch (Character.toLowerCase(p)){
-                case 'p': pawnMoves(bd, r, c, p, out); break;
-                case 'n': knightMoves(b, r, c, p, out); break;
-                case 'b': slideMoves(b, r, c, p, out, new int[][]{{1,1},{1,-1},{-1,1},{-1,-1}}); break;
-                case 'r': slideMoves(b, r, c, p, out, new int[][]{{1,0},{-1,0},{0,1},{0,-1}}); break;
-                case 'q': slideMoves(b, r, c, p, out, new int[][]{{1,0},{-1,0},{0,1},{0,-1},{1,1},{1,-1},{-1,1},{-1,-1}}); break;
-                case 'k': kingMoves(bd, r, c, p, out); break;
-            }
+        int us = white ? WHITE : BLACK, them = us ^ 1;
+        long own = bd.colorBB(us), enemy = bd.colorBB(them), occ = bd.occupied();
+        int ksq = bd.kingSquare(white);
+
+        long checkers = bd.attackersTo(ksq, them, occ);
+        long pinned = pinned(bd, ksq, us, own, occ);
+
+        // king moves: the king itself is lifted so it cannot hide behind its own square
+        int n = 0;
+        int king = Piece.make(us, KING);
+        long modeMask = mode == NOISY ? enemy : mode == QUIET ? ~occ : ~own;
+        long kingTargets = Bitboards.kingAttacks(ksq) & modeMask;
+        long occNoKing = occ ^ Bitboards.bit(ksq);
+        for (; kingTargets != 0; kingTargets &= kingTargets - 1){
+            int to = Bitboards.lsb(kingTargets);
+            if (bd.attackersTo(to, them, occNoKing) != 0) continue;
+            buf[n++] = Move.encode(ksq, to, king, 0, (enemy & Bitboards.bit(to)) != 0 ? Move.CAPTURE : 0);
         }
-        return out;
-    }
+        if (Bitboards.count(checkers) > 1) return n; // double check: only the king may move
+
+        // with a single checker every other move must capture it or block the ray
+        long checkMask = checkers == 0 ? ~0L : checkers | Bitboards.between(ksq, Bitboards.lsb(checkers));
+        long targetMask = checkMask & modeMask;
 
-    private static void pawnMoves(Board bd, int r, int c, char p, List<Move> out){
-        char[][] b = bd.board();
-        boolean white = Util.isWhite(p);
-        int dir = white? -1 : 1;
-        int startRank = white? 6 : 1;
-        int promoRank = white? 0 : 7;
-
-        int nr = r + dir;
-        if (Util.inBounds(nr,c) && b[nr][c]=='.'){
-            addPawnMove(out, r,c,nr,c,p, false, false, false);
-            if (r == startRank && Util.inBounds(nr+dir,c) && b[nr+dir][c]=='.'){
-                out.add(new Move(r,c,nr+dir,c,p,(char)0, Move.DOUBLE_PAWN));
+        n = pawnMoves(bd, white, enemy, occ, ksq, pinned, checkMask, mode, buf, n);
+        for (int type = KNIGHT; type <= QUEEN; type++){
+            int p = Piece.make(us, type);
+            long pieces = bd.pieces(p);
+            if (type == KNIGHT) pieces &= ~pinned; // a pinned knight can never move
+            for (; pieces != 0; pieces &= pieces - 1){
+                int from = Bitboards.lsb(pieces);
+                long targets = attacks(type, from, occ) & targetMask;
+                if ((pinned & Bitboards.bit(from)) != 0) targets &= Bitboards.line(ksq, from);
+                for (; targets != 0; targets &= targets - 1){
+                    int to = Bitboards.lsb(targets);
+                    buf[n++] = Move.encode(from, to, p, 0, (enemy & Bitboards.bit(to)) != 0 ? Move.CAPTURE : 0);
+                }
             }
         }
-        for (int dc : new int[]{-1, 1}){
-            int nc = c + dc;
-            if (!Util.inBounds(nr, nc)) continue;
-            char tgt = b[nr][nc];
-            if (tgt!='.' && Util.isWhite(tgt)!=white){
-                addPawnMove(out, r,c,nr,nc,p, true, false, false);
+        if (checkers == 0 && mode != NOISY) n = castleMoves(bd, white, buf, n);
+        return n;
+    }
+
+    // Whether an encoded move (e.g. from the transposition table or a killer slot)
+    // is legal here. Cheap shape checks first; make/undo only for the final king test.
+    public static boolean isLegal(Board bd, int m){
+        if (m == Move.NONE) return false;
+        boolean white = bd.whiteToMove();
+        int us = white ? WHITE : BLACK;
+        int from = Move.from(m), to = Move.to(m), piece = Move.piece(m), flags = Move.flags(m);
+        if (piece >= 12 || bd.pieceAt(from) != piece || Piece.color(piece) != us) return false;
+
+        if ((flags & Move.CASTLE) != 0){
+            for (int i = white ? 0 : 2, end = i + 2; i < end; i++){
+                if (CASTLES[i][1] == from && CASTLES[i][2] == to) return !bd.inCheck() && canCastle(bd, i, white);
             }
+            return false;
         }
 
-        int epFile = bd.getEpFile();
-        if (epFile != -1){
-            if ((r == (white?3:4)) && Math.abs(epFile - c) == 1){
-                int nc = epFile;
-                if (Util.inBounds(nr,nc)){
-                    out.add(new Move(r,c,nr,nc,p,(char)0, Move.EN_PASSANT | Move.CAPTURE));
-                }
+        int target = bd.pieceAt(to);
+        if (target != NONE && Piece.color(target) == us) return false;
+        long occ = bd.occupied(), toBit = Bitboards.bit(to);
+        int type = Piece.type(piece);
+        boolean ep = (flags & Move.EN_PASSANT) != 0;
+        if (!ep && ((flags & Move.CAPTURE) != 0) != (target != NONE)) return false;
+
+        if (type == PAWN){
+            boolean promoRank = ((white ? Bitboards.ROW_0 : Bitboards.ROW_7) & toBit) != 0;
+            if (promoRank != ((flags & Move.PROMOTION) != 0)) return false;
+            if (promoRank){
+                int promo = Move.promo(m);
+                if (promo >= 12 || Piece.color(promo) != us || Piece.type(promo) < KNIGHT || Piece.type(promo) > QUEEN) return false;
             }
+            int push = white ? -8 : 8;
+            if (ep){
+                int epFile = bd.getEpFile();
+                if (epFile == -1 || to != (white ? 16 + epFile : 40 + epFile)) return false;
+                if ((Bitboards.pawnAttacks(from, white) & toBit) == 0) return false;
+            } else if ((flags & Move.CAPTURE) != 0){
+                if ((Bitboards.pawnAttacks(from, white) & toBit) == 0) return false;
+            } else if ((flags & Move.DOUBLE_PAWN) != 0){
+                long startRow = white ? Bitboards.ROW_7 >>> 8 : Bitboards.ROW_0 << 8;
+                if ((startRow & Bitboards.bit(from)) == 0 || to != from + 2*push) return false;
+                if ((occ & (Bitboards.bit(from + push) | toBit)) != 0) return false;
+            } else {
+                if (to != from + push || target != NONE) return false;
+            }
+        } else {
+            if ((flags & (Move.PROMOTION | Move.EN_PASSANT | Move.DOUBLE_PAWN)) != 0) return false;
+            if ((attacks(type, from, occ) & toBit) == 0) return false;
         }
+
+        bd.make(m);
+        boolean legal = !bd.squareAttacked(bd.kingSquare(white), !white);
+        bd.undo(m);
+        return legal;
     }
 
-    private static void addPawnMove(List<Move> out, int fr,int fc,int tr,int tc, char p, boolean isCapture, boolean isEP, boolean isDouble){
-        boolean white = Util.isWhite(p);
-        int flags = 0;
-        if (isCapture) flags |= Move.CAPTURE;
-        if (isEP) flags |= Move.EN_PASSANT;
-        if (isDouble) flags |= Move.DOUBLE_PAWN;
-        int promoRank = white? 0 : 7;
-
-        if (tr == promoRank){
-            out.add(new Move(fr,fc,tr,tc,p, (white? 'Q':'q'), flags | Move.PROMOTION));
-            out.add(new Move(fr,fc,tr,tc,p, (white? 'R':'r'), flags | Move.PROMOTION));
-            out.add(new Move(fr,fc,tr,tc,p, (white? 'B':'b'), flags | Move.PROMOTION));
-            out.add(new Move(fr,fc,tr,tc,p, (white? 'N':'n'), flags | Move.PROMOTION));
-        } else {
-            out.add(new Move(fr,fc,tr,tc,p,(char)0, flags));
+    // Own pieces that are the only blocker between our king and an enemy slider.
+    private static long pinned(Board bd, int ksq, int us, long own, long occ){
+        int them = us ^ 1;
+        long queens = bd.pieces(them, QUEEN);
+        long snipers = (Bitboards.rookAttacks(ksq, 0) & (bd.pieces(them, ROOK) | queens))
+                     | (Bitboards.bishopAttacks(ksq, 0) & (bd.pieces(them, BISHOP) | queens));
+        long pinned = 0;
+        for (; snipers != 0; snipers &= snipers - 1){
+            long blockers = Bitboards.between(ksq, Bitboards.lsb(snipers)) & occ;
+            if (blockers != 0 && (blockers & (blockers - 1)) == 0) pinned |= blockers & own;
         }
+        return pinned;
     }
 
-    private static void knightMoves(char[][] b, int r, int c, char p, List<Move> out){
-        int[][] d={{2,1},{2,-1},{-2,1},{-2,-1},{1,2},{1,-2},{-1,2},{-1,-2}};
-        boolean white = Util.isWhite(p);
-        for (int[] x: d){
-            int nr=r+x[0], nc=c+x[1];
-            if (!Util.inBounds(nr,nc)) continue;
-            char t=b[nr][nc];
-            if (t=='.' || Util.isWhite(t)!=white){
-                out.add(new Move(r,c,nr,nc,p,(char)0, t!='.'? Move.CAPTURE:0));
-            }
+    static long attacks(int type, int sq, long occ){
+        switch (type){
+            case KNIGHT: return Bitboards.knightAttacks(sq);
+            case BISHOP: return Bitboards.bishopAttacks(sq, occ);
+            case ROOK:   return Bitboards.rookAttacks(sq, occ);
+            case QUEEN:  return Bitboards.queenAttacks(sq, occ);
+            case KING:   return Bitboards.kingAttacks(sq);
+            default:     return 0L;
         }
     }
 
-    private static void slideMoves(char[][] b, int r, int c, char p, List<Move> out, int[][] dirs){
-        boolean white = Util.isWhite(p);
-        for (int[] d: dirs){
-            int nr=r+d[0], nc=c+d[1];
-            while (Util.inBounds(nr,nc)){
-                char t=b[nr][nc];
-                if (t=='.'){ out.add(new Move(r,c,nr,nc,p,(char)0,0)); }
-                else{
-                    if (Util.isWhite(t)!=white) out.add(new Move(r,c,nr,nc,p,(char)0, Move.CAPTURE));
-                    break;
-                }
-                nr+=d[0]; nc+=d[1];
+    private static int pawnMoves(Board bd, boolean white, long enemy, long occ, int ksq, long pinned,
+                                 long checkMask, int mode, int[] buf, int n){
+        int us = white ? WHITE : BLACK;
+        int p = Piece.make(us, PAWN);
+        long pawns = bd.pieces(p);
+        long empty = ~occ;
+        long promoRow = white ? Bitboards.ROW_0 : Bitboards.ROW_7;
+        // origin = target - shift for each set-wise move below
+        int push = white ? -8 : 8;
+
+        long single = (white ? Bitboards.north(pawns) : Bitboards.south(pawns)) & empty;
+        long dbl = (white ? Bitboards.north(single) & Bitboards.ROW_4 : Bitboards.south(single) & Bitboards.ROW_3) & empty;
+        long capL = (white ? Bitboards.northWest(pawns) : Bitboards.southWest(pawns)) & enemy & checkMask;
+        long capR = (white ? Bitboards.northEast(pawns) : Bitboards.southEast(pawns)) & enemy & checkMask;
+        single &= checkMask;
+        if (mode == NOISY) single &= promoRow;
+        if (mode == QUIET) single &= ~promoRow;
+
+        n = addPawnMoves(buf, n, single, push, us, 0, ksq, pinned);
+        if (mode != NOISY){
+            for (long bb = dbl & checkMask; bb != 0; bb &= bb - 1){
+                int to = Bitboards.lsb(bb);
+                int from = to - 2*push;
+                if ((pinned & Bitboards.bit(from)) != 0 && (Bitboards.line(ksq, from) & Bitboards.bit(to)) == 0) continue;
+                buf[n++] = Move.encode(from, to, p, 0, Move.DOUBLE_PAWN);
             }
         }
-    }
+        if (mode == QUIET) return n;
+        n = addPawnMoves(buf, n, capL, push - 1, us, Move.CAPTURE, ksq, pinned);
+        n = addPawnMoves(buf, n, capR, push + 1, us, Move.CAPTURE, ksq, pinned);
 
-    private static void kingMoves(Board bd, int r, int c, char p, List<Move> out){
-        char[][] b = bd.board();
-        boolean white = Util.isWhite(p);
-        for (int dr=-1; dr<=1; dr++) for (int dc=-1; dc<=1; dc++){
-            if (dr==0 && dc==0) continue;
-            int nr=r+dr, nc=c+dc;
-            if (!Util.inBounds(nr,nc)) continue;
-            char t=b[nr][nc];
-            if (t=='.' || Util.isWhite(t)!=white){
-                out.add(new Move(r,c,nr,nc,p,(char)0, t!='.'? Move.CAPTURE:0));
+        int epFile = bd.getEpFile();
+        if (epFile != -1){
+            int target = white ? 16 + epFile : 40 + epFile;
+            int victim = target - push;
+            long attackers = Bitboards.pawnAttacks(target, !white) & pawns;
+            for (; attackers != 0; attackers &= attackers - 1){
+                int from = Bitboards.lsb(attackers);
+                // rare enough to check directly: lift both pawns, drop ours on the target
+                long after = (occ ^ Bitboards.bit(from) ^ Bitboards.bit(victim)) | Bitboards.bit(target);
+                if ((bd.attackersTo(ksq, us ^ 1, after) & ~Bitboards.bit(victim)) != 0) continue;
+                buf[n++] = Move.encode(from, target, p, 0, Move.EN_PASSANT | Move.CAPTURE);
             }
         }
+        return n;
+    }
 
-        int rights = bd.getCastling();
-        if (white){
-            if ((rights & 1)!=0){
-                if (b[7][5]=='.' && b[7][6]=='.' &&
-                    !bd.squareAttacked(7,4,false) && !bd.squareAttacked(7,5,false) && !bd.squareAttacked(7,6,false)){
-                    out.add(new Move(7,4,7,6,'K',(char)0, Move.CASTLE));
-                }
-            }
-            if ((rights & 2)!=0){
-                if (b[7][3]=='.' && b[7][2]=='.' && b[7][1]=='.' &&
-                    !bd.squareAttacked(7,4,false) && !bd.squareAttacked(7,3,false) && !bd.squareAttacked(7,2,false)){
-                    out.add(new Move(7,4,7,2,'K',(char)0, Move.CASTLE));
-                }
-            }
-        } else {
-            if ((rights & 4)!=0){
-                if (b[0][5]=='.' && b[0][6]=='.' &&
-                    !bd.squareAttacked(0,4,true) && !bd.squareAttacked(0,5,true) && !bd.squareAttacked(0,6,true)){
-                    out.add(new Move(0,4,0,6,'k',(char)0, Move.CASTLE));
-                }
-            }
-            if ((rights & 8)!=0){
-                if (b[0][3]=='.' && b[0][2]=='.' && b[0][1]=='.' &&
-                    !bd.squareAttacked(0,4,true) && !bd.squareAttacked(0,3,true) && !bd.squareAttacked(0,2,true)){
-                    out.add(new Move(0,4,0,2,'k',(char)0, Move.CASTLE));
+    private static int addPawnMoves(int[] buf, int n, long targets, int shift, int us, int flags, int ksq, long pinned){
+        int p = Piece.make(us, PAWN);
+        long promoRow = us == WHITE ? Bitboards.ROW_0 : Bitboards.ROW_7;
+        for (; targets != 0; targets &= targets - 1){
+            int to = Bitboards.lsb(targets);
+            int from = to - shift;
+            if ((pinned & Bitboards.bit(from)) != 0 && (Bitboards.line(ksq, from) & Bitboards.bit(to)) == 0) continue;
+            if ((promoRow & Bitboards.bit(to)) != 0){
+                for (int type = QUEEN; type >= KNIGHT; type--){
+                    buf[n++] = Move.encode(from, to, p, Piece.make(us, type), flags | Move.PROMOTION);
                 }
+            } else {
+                buf[n++] = Move.encode(from, to, p, 0, flags);
             }
         }
+        return n;
+    }
+
+    // per castle: rights bit, king from, king to; plus the squares that must be empty
+    private static final int[][] CASTLES = {{1, 60, 62}, {2, 60, 58}, {4, 4, 6}, {8, 4, 2}};
+    private static final long[] CASTLE_EMPTY = {0x6000000000000000L, 0x0E00000000000000L, 0x60L, 0x0EL};
+
+    // Assumes the side to move is not in check.
+    private static boolean canCastle(Board bd, int i, boolean white){
+        int[] c = CASTLES[i];
+        if ((bd.getCastling() & c[0]) == 0 || (bd.occupied() & CASTLE_EMPTY[i]) != 0) return false;
+        return !bd.squareAttacked((c[1] + c[2]) / 2, !white) && !bd.squareAttacked(c[2], !white);
+    }
+
+    private static int castleMoves(Board bd, boolean white, int[] buf, int n){
+        int king = Piece.make(white ? WHITE : BLACK, KING);
+        for (int i = white ? 0 : 2, end = i + 2; i < end; i++){
+            if (canCastle(bd, i, white)) buf[n++] = Move.encode(CASTLES[i][1], CASTLES[i][2], king, 0, Move.CASTLE);
+        }
+        return n;
     }
 }
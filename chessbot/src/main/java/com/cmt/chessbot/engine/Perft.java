@@ -0,0 +1,129 @@
+package com.cmt.chessbot.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Leaf-node counting over MoveGen and Board.make/undo, used to verify the move
+// generator and to track its throughput. Leaves are bulk-counted at depth 1.
+//
+// An optional cache stores (hash, depth) -> count in a lock-free long[] using the
+// same key ^ data check as the transposition table, so parallel runs can share it.
+public class Perft {
+
+    // deepest count; one move list per ply is preallocated
+    public static final int MAX_DEPTH = 64;
+
+    private final int[][] moves = new int[MAX_DEPTH][MoveGen.MAX_MOVES];
+    private final long[] cache; // null when uncached
+    private final int cacheMask;
+
+    public Perft(){
+        this(null);
+    }
+
+    private Perft(long[] cache){
+        this.cache = cache;
+        this.cacheMask = cache == null ? 0 : (cache.length >>> 1) - 1;
+    }
+
+    // Perft with a (hash, depth) cache of the given size in MB.
+    public static Perft cached(int sizeMb){
+        return new Perft(newCache(sizeMb));
+    }
+
+    public long run(Board b, int depth){
+        checkDepth(depth);
+        return depth <= 0 ? 1 : count(b, depth, 0);
+    }
+
+    // Leaf count below each root move, keyed by its UCI string.
+    public Map<String, Long> divide(Board b, int depth){
+        checkDepth(depth);
+        Map<String, Long> out = new LinkedHashMap<>();
+        int[] root = new int[MoveGen.MAX_MOVES];
+        int n = MoveGen.legal(b, root);
+        for (int i=0; i<n; i++){
+            b.make(root[i]);
+            out.put(Move.uci(root[i]), run(b, depth - 1));
+            b.undo(root[i]);
+        }
+        return out;
+    }
+
+    // Splits the root moves over a fork-join pool; each task works on its own Board copy.
+    public static long parallel(Board b, int depth, ForkJoinPool pool, int cacheMb){
+        checkDepth(depth);
+        if (depth <= 1) return new Perft().run(b, depth);
+        long[] cache = cacheMb > 0 ? newCache(cacheMb) : null;
+        return pool.invoke(new RootTask(b, depth, cache));
+    }
+
+    private static void checkDepth(int depth){
+        if (depth > MAX_DEPTH) throw new IllegalArgumentException("perft depth is at most " + MAX_DEPTH + ", got " + depth);
+    }
+
+    private long count(Board b, int depth, int ply){
+        int[] ms = moves[ply];
+        int n = MoveGen.legal(b, ms);
+        if (depth == 1) return n;
+
+        long key = 0;
+        if (cache != null){
+            key = b.hash() ^ (depth * 0x9E3779B97F4A7C15L);
+            int i = ((int)(key ^ (key >>> 32)) & cacheMask) << 1;
+            long v = cache[i+1];
+            if ((cache[i] ^ v) == key) return v;
+        }
+
+        long total = 0;
+        for (int i=0; i<n; i++){
+            b.make(ms[i]);
+            total += count(b, depth - 1, ply + 1);
+            b.undo(ms[i]);
+        }
+
+        if (cache != null){
+            int i = ((int)(key ^ (key >>> 32)) & cacheMask) << 1;
+            cache[i] = key ^ total;
+            cache[i+1] = total;
+        }
+        return total;
+    }
+
+    private static long[] newCache(int sizeMb){
+        long entries = Long.highestOneBit(Math.max(1, sizeMb) * 1024L * 1024L / 16);
+        return new long[(int)Math.min(entries, 1L << 29) * 2];
+    }
+
+    private static class RootTask extends RecursiveTask<Long> {
+        private final Board board;
+        private final int depth;
+        private final long[] cache;
+
+        RootTask(Board board, int depth, long[] cache){
+            this.board = board; this.depth = depth; this.cache = cache;
+        }
+
+        @Override protected Long compute(){
+            int[] root = new int[MoveGen.MAX_MOVES];
+            int n = MoveGen.legal(board, root);
+            List<RecursiveTask<Long>> tasks = new ArrayList<>(n);
+            for (int i=0; i<n; i++){
+                Board child = board.copy();
+                child.make(root[i]);
+                tasks.add(new RecursiveTask<>() {
+                    @Override protected Long compute(){
+                        return new Perft(cache).run(child, depth - 1);
+                    }
+                });
+            }
+            long total = 0;
+            for (RecursiveTask<Long> t : invokeAll(tasks)) total += t.join();
+            return total;
+        }
+    }
+}
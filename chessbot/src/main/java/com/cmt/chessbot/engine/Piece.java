@@ -0,0 +1,19 @@
+package com.cmt.chessbot.engine;
+
+public final class Piece {
+    private Piece() {}
+
+    public static final int WHITE = 0, BLACK = 1;
+    public static final int PAWN = 0, KNIGHT = 1, BISHOP = 2, ROOK = 3, QUEEN = 4, KING = 5;
+    public static final int NONE = -1;
+
+    // piece index = color*6 + type, so 'P'..'K' are 0..5 and 'p'..'k' are 6..11
+    private static final String CHARS = "PNBRQKpnbrqk";
+
+    public static int make(int color, int type){ return color*6 + type; }
+    public static int type(int p){ return p % 6; }
+    public static int color(int p){ return p < 6 ? WHITE : BLACK; }
+
+    public static char toChar(int p){ return p == NONE ? '.' : CHARS.charAt(p); }
+    public static int fromChar(char ch){ return CHARS.indexOf(ch); }
+}
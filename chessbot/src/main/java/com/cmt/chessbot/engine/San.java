@@ -0,0 +1,70 @@
+package com.cmt.chessbot.engine;
+
+// Standard algebraic notation (Nf3, exd5, O-O, e8=Q) for the legal moves of a position.
+// Check marks and annotations are not produced, and are ignored when parsing.
+public final class San {
+    private San() {}
+
+    private static final String LETTERS = "PNBRQK";
+
+    public static String of(Board b, int m){
+        int flags = Move.flags(m), from = Move.from(m), to = Move.to(m);
+        if ((flags & Move.CASTLE) != 0) return (to & 7) == 6 ? "O-O" : "O-O-O";
+        int type = Piece.type(Move.piece(m));
+        boolean capture = (flags & Move.CAPTURE) != 0;
+        StringBuilder sb = new StringBuilder(7);
+        if (type == Piece.PAWN){
+            if (capture) sb.append(file(from));
+        } else {
+            sb.append(LETTERS.charAt(type));
+            // disambiguate against other legal moves of the same piece type to the same square
+            int[] moves = new int[MoveGen.MAX_MOVES];
+            int n = MoveGen.legal(b, moves);
+            boolean clash = false, sameFile = false, sameRank = false;
+            for (int i=0; i<n; i++){
+                int o = moves[i];
+                if (o == m || Move.to(o) != to || Move.piece(o) != Move.piece(m)) continue;
+                clash = true;
+                if ((Move.from(o) & 7) == (from & 7)) sameFile = true;
+                if ((Move.from(o) >> 3) == (from >> 3)) sameRank = true;
+            }
+            if (clash){
+                if (!sameFile) sb.append(file(from));
+                else if (!sameRank) sb.append(rank(from));
+                else sb.append(file(from)).append(rank(from));
+            }
+        }
+        if (capture) sb.append('x');
+        sb.append(file(to)).append(rank(to));
+        if ((flags & Move.PROMOTION) != 0) sb.append('=').append(LETTERS.charAt(Piece.type(Move.promo(m))));
+        return sb.toString();
+    }
+
+    // The legal move written as san, or Move.NONE. Lenient about x, =, check marks,
+    // annotation glyphs and 0-0 for O-O.
+    public static int parse(Board b, String san){
+        String want = normalize(san);
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        int n = MoveGen.legal(b, moves);
+        for (int i=0; i<n; i++){
+            int to = Move.to(moves[i]);
+            // cheap filter before building the full SAN (castling names no square)
+            if ((Move.flags(moves[i]) & Move.CASTLE) == 0 && want.indexOf("" + file(to) + rank(to)) < 0) continue;
+            if (normalize(of(b, moves[i])).equals(want)) return moves[i];
+        }
+        return Move.NONE;
+    }
+
+    private static String normalize(String san){
+        StringBuilder sb = new StringBuilder(san.length());
+        for (int i=0; i<san.length(); i++){
+            char ch = san.charAt(i);
+            if (ch == '0') ch = 'O';
+            if ("x=+#!?".indexOf(ch) < 0) sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+    private static char file(int sq){ return (char) ('a' + (sq & 7)); }
+    private static char rank(int sq){ return (char) ('8' - (sq >> 3)); }
+}
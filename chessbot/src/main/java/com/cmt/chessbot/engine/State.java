@@ -1,17 +1,21 @@
 package com.cmt.chessbot.engine;
 
+// Irreversible part of a position saved by Board.make. Instances are preallocated
+// per ply and overwritten, so make/undo never allocate.
 public class State {
-    public final int castling;
-    public final int epFile;
-    public final int halfmoveClock;
-    public final int fullmoveNumber;
-    public final char captured;
+    public int castling;
+    public int epFile;
+    public int halfmoveClock;
+    public int fullmoveNumber;
+    public int captured; // Piece index or Piece.NONE
+    public long hash;    // Zobrist key before the move
 
-    public State(int castling, int epFile, int halfmoveClock, int fullmoveNumber, char captured) {
+    void set(int castling, int epFile, int halfmoveClock, int fullmoveNumber, int captured, long hash) {
         this.castling = castling;
         this.epFile = epFile;
         this.halfmoveClock = halfmoveClock;
         this.fullmoveNumber = fullmoveNumber;
         this.captured = captured;
+        this.hash = hash;
     }
 }
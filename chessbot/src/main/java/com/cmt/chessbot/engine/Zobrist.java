@@ -0,0 +1,28 @@
+package com.cmt.chessbot.engine;
+
+// Zobrist keys for Board.hash(). Generated from a fixed seed so that keys are
+// stable across runs and can be stored on disk.
+public final class Zobrist {
+    private Zobrist() {}
+
+    static final long[][] PIECE = new long[12][64];
+    static final long[] CASTLING = new long[16];
+    static final long[] EP_FILE = new long[8];
+    static final long SIDE;
+
+    static {
+        long s = 0x2545F4914F6CDD1DL;
+        for (int p=0; p<12; p++) for (int sq=0; sq<64; sq++) PIECE[p][sq] = s = next(s);
+        for (int i=0; i<16; i++) CASTLING[i] = s = next(s);
+        for (int i=0; i<8; i++) EP_FILE[i] = s = next(s);
+        SIDE = next(s);
+    }
+
+    // splitmix64 step
+    private static long next(long s){
+        long z = s + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,20 +1,112 @@
 package com.cmt.chessbot.evaluation;
 
+import com.cmt.chessbot.engine.Bitboards;
 import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Piece;
 
+// Tapered evaluation, white-relative. Material and piece-square terms come from the
+// sums Board keeps incrementally (see Psqt); pawn structure, mobility and king safety
+// are computed here from bitboards. Terms are packed as S(mg, eg) and blended by phase.
 public class Evaluation {
-    private static final int[] V = new int[128];
+
+    public static final Evaluator CLASSIC = Evaluation::evaluate;
+
+    private static final int BISHOP_PAIR = S(30, 50);
+    private static final int DOUBLED = S(-10, -20);
+    private static final int ISOLATED = S(-10, -15);
+    private static final int SHIELD = S(12, 0);
+    private static final int[] PASSED = { // by relative rank, 0 = own back rank
+        S(0, 0), S(5, 10), S(10, 15), S(15, 25), S(25, 45), S(40, 75), S(60, 120), S(0, 0)
+    };
+    // per reachable square, centred on a typical count so an average piece scores ~0
+    private static final int[] MOBILITY = {0, S(4, 4), S(4, 5), S(2, 4), S(1, 2), 0};
+    private static final int[] MOBILITY_AVG = {0, 4, 6, 7, 13, 0};
+    private static final int[] KING_ATTACK_WEIGHT = {0, 2, 2, 3, 5, 0};
+    private static final int KING_DANGER_MAX = 400;
+
+    private static final long[] ADJACENT_FILES = new long[8];
+    private static final long[][] PASSED_MASK = new long[2][64]; // enemy pawns that stop a passer
+    private static final long[][] SHIELD_MASK = new long[2][64]; // two ranks in front of the king
+
     static {
-        V['P']=100; V['N']=320; V['B']=330; V['R']=500; V['Q']=900; V['K']=20000;
-        V['p']=-100; V['n']=-320; V['b']=-330; V['r']=-500; V['q']=-900; V['k']=-20000;
+        for (int f=0; f<8; f++){
+            if (f > 0) ADJACENT_FILES[f] |= Bitboards.FILE_A << (f-1);
+            if (f < 7) ADJACENT_FILES[f] |= Bitboards.FILE_A << (f+1);
+        }
+        for (int sq=0; sq<64; sq++){
+            int r = sq >> 3, c = sq & 7;
+            long files = ADJACENT_FILES[c] | (Bitboards.FILE_A << c);
+            for (int rr=0; rr<8; rr++){
+                long row = (0xFFL << (rr*8)) & files;
+                if (rr < r) PASSED_MASK[Piece.WHITE][sq] |= row;
+                if (rr > r) PASSED_MASK[Piece.BLACK][sq] |= row;
+                if (rr == r-1 || rr == r-2) SHIELD_MASK[Piece.WHITE][sq] |= row;
+                if (rr == r+1 || rr == r+2) SHIELD_MASK[Piece.BLACK][sq] |= row;
+            }
+        }
     }
 
     public static int evaluate(Board board){
-        int s=0;
-        char[][] a = board.board();
-        for (int r=0;r<8;r++) for (int c=0;c<8;c++){
-            s += V[a[r][c]];
+        int s = S(board.psqMg(), board.psqEg())
+              + side(board, Piece.WHITE) - side(board, Piece.BLACK);
+        int phase = Math.min(board.phase(), Psqt.MAX_PHASE);
+        return (mg(s) * phase + eg(s) * (Psqt.MAX_PHASE - phase)) / Psqt.MAX_PHASE;
+    }
+
+    // everything beyond material and PST for one side, from that side's point of view
+    private static int side(Board b, int us){
+        int them = us ^ 1;
+        boolean white = us == Piece.WHITE;
+        long occ = b.occupied();
+        long ourPawns = b.pieces(us, Piece.PAWN), theirPawns = b.pieces(them, Piece.PAWN);
+        int s = 0;
+
+        // pawn structure
+        for (int f=0; f<8; f++){
+            int onFile = Long.bitCount(ourPawns & (Bitboards.FILE_A << f));
+            if (onFile > 1) s += DOUBLED * (onFile - 1);
         }
+        for (long p = ourPawns; p != 0; p &= p - 1){
+            int sq = Bitboards.lsb(p);
+            if ((ourPawns & ADJACENT_FILES[sq & 7]) == 0) s += ISOLATED;
+            if ((theirPawns & PASSED_MASK[us][sq]) == 0) s += PASSED[white ? 7 - (sq >> 3) : sq >> 3];
+        }
+
+        // mobility, collecting attacks on the enemy king zone on the way
+        long area = ~b.colorBB(us) & ~Bitboards.pawnAttacks(theirPawns, !white);
+        int theirKing = b.kingSquare(!white);
+        long zone = Bitboards.kingAttacks(theirKing) | Bitboards.bit(theirKing);
+        int attackers = 0, units = 0;
+        for (int t=Piece.KNIGHT; t<=Piece.QUEEN; t++){
+            for (long p = b.pieces(us, t); p != 0; p &= p - 1){
+                int sq = Bitboards.lsb(p);
+                long a = attacks(t, sq, occ);
+                s += MOBILITY[t] * (Long.bitCount(a & area) - MOBILITY_AVG[t]);
+                if ((a & zone) != 0){
+                    attackers++;
+                    units += KING_ATTACK_WEIGHT[t] + Long.bitCount(a & zone);
+                }
+            }
+        }
+        if (Long.bitCount(b.pieces(us, Piece.BISHOP)) >= 2) s += BISHOP_PAIR;
+
+        // king safety: reward our pawn shield, punish a coordinated attack on theirs
+        s += SHIELD * Long.bitCount(ourPawns & SHIELD_MASK[us][b.kingSquare(white)]);
+        if (attackers >= 2) s += S(Math.min(units * units / 2, KING_DANGER_MAX), 0);
         return s;
     }
+
+    private static long attacks(int type, int sq, long occ){
+        switch (type){
+            case Piece.KNIGHT: return Bitboards.knightAttacks(sq);
+            case Piece.BISHOP: return Bitboards.bishopAttacks(sq, occ);
+            case Piece.ROOK:   return Bitboards.rookAttacks(sq, occ);
+            default:           return Bitboards.queenAttacks(sq, occ);
+        }
+    }
+
+    // mg in the low 16 bits, eg in the high 16; sums of packed scores stay packed
+    private static int S(int mg, int eg){ return (eg << 16) + mg; }
+    private static int mg(int s){ return (short) s; }
+    private static int eg(int s){ return (short) ((s + 0x8000) >> 16); }
 }
@@ -0,0 +1,14 @@
+package com.cmt.chessbot.evaluation;
+
+import com.cmt.chessbot.engine.Board;
+
+// Static evaluation used by the search; scores are white-relative centipawns.
+public interface Evaluator {
+
+    int evaluate(Board board);
+
+    // Called once per search with the board that search will make/undo on. Evaluators
+    // with incremental state return a board-bound instance registered as its listener;
+    // the search clears the listener when it is done.
+    default Evaluator attach(Board board){ return this; }
+}
@@ -0,0 +1,29 @@
+package com.cmt.chessbot.evaluation;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Evaluators selectable by name per request; a null or empty name picks the configured default.
+public class Evaluators {
+
+    private final Map<String,Evaluator> byName = new LinkedHashMap<>();
+    private final String defaultName;
+
+    public Evaluators(NnueNetwork nnue, String defaultName){
+        byName.put("classic", Evaluation.CLASSIC);
+        byName.put("nnue", nnue);
+        if (!byName.containsKey(defaultName)) throw new IllegalArgumentException("unknown evaluator: " + defaultName);
+        this.defaultName = defaultName;
+    }
+
+    public String resolve(String name){
+        String n = name == null || name.isEmpty() ? defaultName : name;
+        if (!byName.containsKey(n)) throw new IllegalArgumentException("unknown evaluator: " + n + ", expected one of " + names());
+        return n;
+    }
+
+    public Evaluator get(String name){ return byName.get(resolve(name)); }
+
+    public Set<String> names(){ return byName.keySet(); }
+}
@@ -0,0 +1,49 @@
+package com.cmt.chessbot.evaluation;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Piece;
+
+// First-layer activations for both perspectives of one board, kept current by
+// adding or subtracting one weight row per piece placed or lifted. make and undo
+// both go through Board.put/remove, so undo replays the exact inverse updates.
+final class NnueAccumulator implements Evaluator, Board.Listener {
+
+    private final NnueNetwork net;
+    private final short[][] acc;
+
+    NnueAccumulator(NnueNetwork net, Board board){
+        this(net, board, true);
+    }
+
+    NnueAccumulator(NnueNetwork net, Board board, boolean listen){
+        this.net = net;
+        this.acc = new short[2][net.hidden];
+        for (int pov=0; pov<2; pov++){
+            System.arraycopy(net.featureBias, 0, acc[pov], 0, net.hidden);
+            for (int p=0; p<12; p++){
+                for (long bb = board.pieces(p); bb != 0; bb &= bb - 1){
+                    net.kernel.add(acc[pov], net.featureWeights, NnueNetwork.feature(pov, p, Long.numberOfTrailingZeros(bb)) * net.hidden);
+                }
+            }
+        }
+        if (listen) board.setListener(this);
+    }
+
+    @Override
+    public void pieceAdded(int piece, int sq){
+        net.kernel.add(acc[Piece.WHITE], net.featureWeights, NnueNetwork.feature(Piece.WHITE, piece, sq) * net.hidden);
+        net.kernel.add(acc[Piece.BLACK], net.featureWeights, NnueNetwork.feature(Piece.BLACK, piece, sq) * net.hidden);
+    }
+
+    @Override
+    public void pieceRemoved(int piece, int sq){
+        net.kernel.sub(acc[Piece.WHITE], net.featureWeights, NnueNetwork.feature(Piece.WHITE, piece, sq) * net.hidden);
+        net.kernel.sub(acc[Piece.BLACK], net.featureWeights, NnueNetwork.feature(Piece.BLACK, piece, sq) * net.hidden);
+    }
+
+    @Override
+    public int evaluate(Board board){
+        return board.whiteToMove() ? net.output(acc[Piece.WHITE], acc[Piece.BLACK])
+                                   : -net.output(acc[Piece.BLACK], acc[Piece.WHITE]);
+    }
+}
@@ -0,0 +1,47 @@
+package com.cmt.chessbot.evaluation;
+
+// Inner loops of NNUE inference. The Vector API version is used when the
+// jdk.incubator.vector module is present (--add-modules jdk.incubator.vector),
+// otherwise these plain loops, which give bit-identical results.
+interface NnueKernel {
+
+    // acc[i] += w[off+i] for the whole accumulator
+    void add(short[] acc, short[] w, int off);
+
+    // acc[i] -= w[off+i]
+    void sub(short[] acc, short[] w, int off);
+
+    // sum of clamp(us[i],0,qa)*w[i] + clamp(them[i],0,qa)*w[n+i]
+    int output(short[] us, short[] them, short[] w, int qa);
+
+    String name();
+
+    NnueKernel SCALAR = new NnueKernel(){
+        public void add(short[] acc, short[] w, int off){
+            for (int i=0; i<acc.length; i++) acc[i] += w[off + i];
+        }
+        public void sub(short[] acc, short[] w, int off){
+            for (int i=0; i<acc.length; i++) acc[i] -= w[off + i];
+        }
+        public int output(short[] us, short[] them, short[] w, int qa){
+            int n = us.length, sum = 0;
+            for (int i=0; i<n; i++){
+                sum += Math.min(Math.max(us[i], 0), qa) * w[i];
+                sum += Math.min(Math.max(them[i], 0), qa) * w[n + i];
+            }
+            return sum;
+        }
+        public String name(){ return "scalar"; }
+    };
+
+    static NnueKernel select(boolean simd){
+        if (simd && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()){
+            try {
+                return new VectorKernel();
+            } catch (LinkageError e) {
+                // module resolved but unusable on this VM; fall through
+            }
+        }
+        return SCALAR;
+    }
+}
@@ -0,0 +1,136 @@
+package com.cmt.chessbot.evaluation;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Piece;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Efficiently updatable network: (768 -> H) x 2 perspectives -> 1, clipped ReLU.
+// Inputs are piece-on-square from each side's point of view (own pieces first,
+// board mirrored for black), so one weight set serves both accumulators.
+//
+// File format, little endian: int magic, version, hidden, qa, qb, scale, then
+// short featureWeights[768*H], featureBias[H], outputWeights[2*H] (side to move
+// first) and int outputBias. eval = (output + bias) * scale / (qa * qb).
+public final class NnueNetwork implements Evaluator {
+
+    public static final int INPUTS = 768;
+    private static final int MAGIC = 0x4E4E4243; // "CBNN"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 6 * 4;
+
+    final int hidden, qa, qb, scale;
+    final short[] featureWeights, featureBias, outputWeights;
+    final int outputBias;
+    final NnueKernel kernel;
+
+    private NnueNetwork(int hidden, int qa, int qb, int scale, short[] featureWeights, short[] featureBias,
+                        short[] outputWeights, int outputBias, NnueKernel kernel){
+        this.hidden = hidden; this.qa = qa; this.qb = qb; this.scale = scale;
+        this.featureWeights = featureWeights; this.featureBias = featureBias;
+        this.outputWeights = outputWeights; this.outputBias = outputBias;
+        this.kernel = kernel;
+    }
+
+    // Reads the whole file once and copies the weights into heap arrays, which the kernels
+    // load as vectors; nothing stays mapped or open afterwards.
+    public static NnueNetwork load(Path file, boolean simd){
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+            if (buf.remaining() < HEADER_BYTES || buf.getInt() != MAGIC || buf.getInt() != VERSION)
+                throw new IllegalArgumentException("not a network file: " + file);
+            int hidden = buf.getInt(), qa = buf.getInt(), qb = buf.getInt(), scale = buf.getInt();
+            long expected = HEADER_BYTES + 2L * (INPUTS * (long) hidden + 3L * hidden) + 4;
+            if (hidden <= 0 || qa <= 0 || qb <= 0 || buf.capacity() != expected)
+                throw new IllegalArgumentException("corrupt network file: " + file);
+            short[] fw = new short[INPUTS * hidden], fb = new short[hidden], ow = new short[2 * hidden];
+            readShorts(buf, fw); readShorts(buf, fb); readShorts(buf, ow);
+            return new NnueNetwork(hidden, qa, qb, scale, fw, fb, ow, buf.getInt(), NnueKernel.select(simd));
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot read network " + file, e);
+        }
+    }
+
+    public void write(Path file){
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + 2 * (featureWeights.length + featureBias.length + outputWeights.length) + 4)
+                                   .order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(hidden).putInt(qa).putInt(qb).putInt(scale);
+        for (short v : featureWeights) buf.putShort(v);
+        for (short v : featureBias) buf.putShort(v);
+        for (short v : outputWeights) buf.putShort(v);
+        buf.putInt(outputBias).flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING)){
+            while (buf.hasRemaining()) ch.write(buf);
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write network " + file, e);
+        }
+    }
+
+    // Stand-in until trained weights are configured: one hidden unit per square for own
+    // pieces and one for enemy pieces, each holding that piece's middlegame material+PST
+    // value. Plays like the PST part of the classic evaluation; units past 128 are zero.
+    public static NnueNetwork bootstrap(int hidden, boolean simd){
+        if (hidden < 128) throw new IllegalArgumentException("bootstrap network needs at least 128 hidden units");
+        final int qa = 255, qb = 64, scale = 400, step = 8, offset = 16;
+        short[] fw = new short[INPUTS * hidden], fb = new short[hidden], ow = new short[2 * hidden];
+        for (int rel=0; rel<12; rel++){
+            int type = rel % 6;
+            for (int s=0; s<64; s++){
+                int value = rel < 6 ? Psqt.MG[Piece.make(Piece.WHITE, type)][s] : -Psqt.MG[Piece.make(Piece.BLACK, type)][s];
+                int unit = rel < 6 ? s : 64 + s;
+                fw[(rel * 64 + s) * hidden + unit] = (short) Math.round(value / (double) step);
+            }
+        }
+        // offset keeps negative king squares above the ReLU floor; own and enemy units cancel it
+        for (int j=0; j<128; j++){
+            fb[j] = offset;
+            ow[j] = (short) Math.round((j < 64 ? 1 : -1) * step * qa * qb / (double) scale);
+        }
+        return new NnueNetwork(hidden, qa, qb, scale, fw, fb, ow, 0, NnueKernel.select(simd));
+    }
+
+    public int hidden(){ return hidden; }
+    public String kernel(){ return kernel.name(); }
+
+    // same weights, different inner loops; used to compare SIMD against the scalar path
+    public NnueNetwork withKernel(boolean simd){
+        return new NnueNetwork(hidden, qa, qb, scale, featureWeights, featureBias, outputWeights, outputBias,
+                               NnueKernel.select(simd));
+    }
+
+    @Override
+    public Evaluator attach(Board board){
+        return new NnueAccumulator(this, board);
+    }
+
+    // Non-incremental: builds both accumulators from scratch.
+    @Override
+    public int evaluate(Board board){
+        return new NnueAccumulator(this, board, false).evaluate(board);
+    }
+
+    // index of the weight row for a piece on a square, seen from pov's side
+    static int feature(int pov, int piece, int sq){
+        int rel = Piece.color(piece) == pov ? Piece.type(piece) : Piece.type(piece) + 6;
+        return rel * 64 + (pov == Piece.WHITE ? sq : sq ^ 56);
+    }
+
+    // side-to-move relative centipawns from the two accumulators
+    int output(short[] us, short[] them){
+        long raw = (long) kernel.output(us, them, outputWeights, qa) + outputBias;
+        return (int) (raw * scale / ((long) qa * qb));
+    }
+
+    private static void readShorts(ByteBuffer buf, short[] dst){
+        buf.asShortBuffer().get(dst);
+        buf.position(buf.position() + 2 * dst.length);
+    }
+}
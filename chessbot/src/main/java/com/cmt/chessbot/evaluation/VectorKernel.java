@@ -0,0 +1,60 @@
+package com.cmt.chessbot.evaluation;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// SIMD NnueKernel. Only loaded through NnueKernel.select, after checking the
+// incubator module is available.
+final class VectorKernel implements NnueKernel {
+
+    private static final VectorSpecies<Short> S = ShortVector.SPECIES_PREFERRED;
+    // same vector width, half the lanes: a short vector widens into two of these
+    private static final VectorSpecies<Integer> I = IntVector.SPECIES_PREFERRED;
+
+    public void add(short[] acc, short[] w, int off){
+        int i = 0;
+        for (int end = S.loopBound(acc.length); i < end; i += S.length()){
+            ShortVector.fromArray(S, acc, i).add(ShortVector.fromArray(S, w, off + i)).intoArray(acc, i);
+        }
+        for (; i<acc.length; i++) acc[i] += w[off + i];
+    }
+
+    public void sub(short[] acc, short[] w, int off){
+        int i = 0;
+        for (int end = S.loopBound(acc.length); i < end; i += S.length()){
+            ShortVector.fromArray(S, acc, i).sub(ShortVector.fromArray(S, w, off + i)).intoArray(acc, i);
+        }
+        for (; i<acc.length; i++) acc[i] -= w[off + i];
+    }
+
+    public int output(short[] us, short[] them, short[] w, int qa){
+        int n = us.length, i = 0;
+        short max = (short) qa;
+        IntVector sum = IntVector.zero(I);
+        for (int end = S.loopBound(n); i < end; i += S.length()){
+            ShortVector a = ShortVector.fromArray(S, us, i).max((short) 0).min(max);
+            ShortVector b = ShortVector.fromArray(S, them, i).max((short) 0).min(max);
+            ShortVector wa = ShortVector.fromArray(S, w, i);
+            ShortVector wb = ShortVector.fromArray(S, w, n + i);
+            // clamp*weight can overflow 16 bits, so multiply in widened int lanes
+            for (int part=0; part<2; part++){
+                sum = sum.add(widen(a, part).mul(widen(wa, part)))
+                         .add(widen(b, part).mul(widen(wb, part)));
+            }
+        }
+        int s = sum.reduceLanes(VectorOperators.ADD);
+        for (; i<n; i++){
+            s += Math.min(Math.max(us[i], 0), qa) * w[i];
+            s += Math.min(Math.max(them[i], 0), qa) * w[n + i];
+        }
+        return s;
+    }
+
+    private static IntVector widen(ShortVector v, int part){
+        return (IntVector) v.convertShape(VectorOperators.S2I, I, part);
+    }
+
+    public String name(){ return "simd-" + S.vectorBitSize(); }
+}
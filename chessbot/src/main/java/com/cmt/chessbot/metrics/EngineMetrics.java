@@ -0,0 +1,74 @@
+package com.cmt.chessbot.metrics;
+
+import com.cmt.chessbot.search.SearchStats;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Engine counters and latency histograms, published through Micrometer (/actuator/metrics).
+// The search itself only bumps plain per-thread fields; a finished search is recorded
+// here once, from the SearchStats its threads added up.
+@Component
+public class EngineMetrics {
+
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    private final MeterRegistry registry;
+    private final Timer searchTime;
+    private final DistributionSummary nodes, qnodes, nps, ttHitRate, firstMoveCutoffRate;
+    private final Counter ttProbes, ttHits, ttCutoffs;
+    private final Map<Integer, Timer> timeToDepth = new ConcurrentHashMap<>();
+
+    public EngineMetrics(MeterRegistry registry){
+        this.registry = registry;
+        this.searchTime = Timer.builder("chess.search.time").description("wall time of finished searches")
+            .publishPercentiles(PERCENTILES).publishPercentileHistogram().register(registry);
+        this.nodes = summary("chess.search.nodes", "nodes per search, quiescence included");
+        this.qnodes = summary("chess.search.qnodes", "quiescence nodes per search");
+        this.nps = summary("chess.search.nps", "nodes per second per search");
+        this.ttHitRate = summary("chess.search.tt.hit.rate", "share of transposition table probes that hit");
+        this.firstMoveCutoffRate = summary("chess.search.first.move.cutoff.rate",
+                                           "share of beta cutoffs made by the first move searched");
+        this.ttProbes = Counter.builder("chess.search.tt.probes").register(registry);
+        this.ttHits = Counter.builder("chess.search.tt.hits").register(registry);
+        this.ttCutoffs = Counter.builder("chess.search.tt.cutoffs").description("nodes answered by the table").register(registry);
+    }
+
+    private DistributionSummary summary(String name, String description){
+        return DistributionSummary.builder(name).description(description).publishPercentiles(PERCENTILES).register(registry);
+    }
+
+    // A search that ran; null stats (a result read back from disk) are ignored.
+    public void search(SearchStats s){
+        if (s == null) return;
+        searchTime.record(s.timeMs(), TimeUnit.MILLISECONDS);
+        nodes.record(s.nodes());
+        qnodes.record(s.qnodes());
+        nps.record(s.nps());
+        ttHitRate.record(s.ttHitRate());
+        firstMoveCutoffRate.record(s.firstMoveCutoffRate());
+        ttProbes.increment(s.ttProbes());
+        ttHits.increment(s.ttHits());
+        ttCutoffs.increment(s.ttCutoffs());
+        long[] depthMs = s.depthMs();
+        for (int d=0; d<depthMs.length; d++) timeToDepth(d + 1).record(depthMs[d], TimeUnit.MILLISECONDS);
+    }
+
+    private Timer timeToDepth(int depth){
+        return timeToDepth.computeIfAbsent(depth, d -> Timer.builder("chess.search.time.to.depth")
+            .description("elapsed when an iteration completed").tag("depth", String.valueOf(d))
+            .publishPercentiles(PERCENTILES).register(registry));
+    }
+
+    // Lookups that answer without searching, as chess.<source>.lookups{result=hit|miss}:
+    // "cache" (analysis cache), "book" and "tablebase" (root probes).
+    public void lookup(String source, boolean hit){
+        registry.counter("chess." + source + ".lookups", "result", hit ? "hit" : "miss").increment();
+    }
+}
@@ -3,19 +3,141 @@ package com.cmt.chessbot.search;
 import com.cmt.chessbot.engine.Board;
 import com.cmt.chessbot.engine.Move;
 import com.cmt.chessbot.engine.MoveGen;
+import com.cmt.chessbot.engine.Piece;
 import com.cmt.chessbot.evaluation.Evaluation;
+import com.cmt.chessbot.evaluation.Evaluator;
+import com.cmt.chessbot.tablebase.Tablebase;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public class AlphaBeta {
 
-    private final int maxDepth;
-    private final long stopAt;
+    static final int INF = 300000;
+    static final int MATE = 29000;
+    static final int MAX_PLY = 128;
+    public static final int MAX_DEPTH = MAX_PLY - 1;
+    public static final int TB_WIN = MATE - 2 * MAX_PLY; // tablebase win: above any eval, below any mate
+    private static final int HISTORY_MAX = 1 << 20;
+    private static final int CLOCK_CHECK_NODES = 2048; // nodes between clock reads
+    private static final int ASPIRATION_DELTA = 25;
+    private static final int ASPIRATION_MIN_DEPTH = 4;
+    private static final int NULL_MOVE_MIN_DEPTH = 3;
+    private static final int LMR_MIN_DEPTH = 3;
+    private static final int FUTILITY_MARGIN = 200;
+    private static final int[][] LMR = new int[MAX_PLY][MoveGen.MAX_MOVES]; // [depth][move number]
+    static {
+        for (int d=1; d<MAX_PLY; d++)
+            for (int n=1; n<MoveGen.MAX_MOVES; n++)
+                LMR[d][n] = (int) (0.75 + Math.log(d) * Math.log(n) / 2.25);
+    }
+
+    private int maxDepth;
+    private TimeManager time;
+    private int untilClockCheck = CLOCK_CHECK_NODES;
+    private boolean haveMove; // an iteration has completed, so a hard stop has something to return
+    private final TranspositionTable tt;
+    private final Evaluator evaluator;
+    private final boolean pvs, aspiration, nullMove, lmr, checkExtension, qsFutility;
+    private Evaluator eval; // evaluator attached to the board being searched
+    private Tablebase tablebase; // null when there are no tables
+    private boolean aborted;
+    private volatile boolean stopRequested;
+    private int helperId; // 0 for the main thread; >0 perturbs depth and root order
+    private long nodes;
+    private long qnodes, ttProbes, ttHits, ttCutoffs, cutNodes, firstMoveCutoffs; // see SearchStats
+
+    // move ordering state, reused across nodes and iterations
+    private final int[] rootMoves = new int[MoveGen.MAX_MOVES];
+    private final int[] rootScores = new int[MoveGen.MAX_MOVES];
+    private final See see = new See();
+    private final int[][] history = new int[12][64];
+    private final int[][] killers = new int[MAX_PLY][2];
+    private final MovePicker[] pickers = new MovePicker[MAX_PLY];
+    private final boolean[] nullMoved = new boolean[MAX_PLY]; // no two null moves in a row
+
+    // triangular PV table: row ply holds the best line found from that ply, in [ply, pvLength[ply])
+    private final int[][] pvTable = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    private int seldepth;
+    private Consumer<Info> onIteration;
+
+    // multi-PV: the best root moves of the last completed iteration, best first, with
+    // their side-to-move scores and lines (allocated by withMultiPv)
+    private int multiPv = 1;
+    private int[] lineMoves, lineScores, lineLength;
+    private int[][] lines;
+    private int lineCount;
+
+    public AlphaBeta(int depth, int movetimeMs, TranspositionTable tt){
+        this(depth, TimeManager.movetime(movetimeMs), tt, Evaluation.CLASSIC, SearchFeature.all());
+    }
+
+    public AlphaBeta(int depth, TimeManager time, TranspositionTable tt, Evaluator evaluator, Set<SearchFeature> features){
+        this.evaluator = evaluator;
+        this.pvs = features.contains(SearchFeature.PVS);
+        this.aspiration = features.contains(SearchFeature.ASPIRATION);
+        this.nullMove = features.contains(SearchFeature.NULL_MOVE);
+        this.lmr = features.contains(SearchFeature.LMR);
+        this.checkExtension = features.contains(SearchFeature.CHECK_EXTENSION);
+        this.qsFutility = features.contains(SearchFeature.QS_FUTILITY);
+        this.maxDepth = Math.max(1, Math.min(depth, MAX_DEPTH));
+        this.time = time;
+        this.tt = tt;
+        for (int i=0; i<MAX_PLY; i++) pickers[i] = new MovePicker(see, history);
+    }
+
+    // Readies a finished searcher for another root, keeping its buffers, transposition
+    // table and history (halved); for workers that search many positions in a row.
+    public AlphaBeta reuse(int depth, TimeManager time){
+        this.maxDepth = Math.max(1, Math.min(depth, MAX_DEPTH));
+        this.time = time;
+        untilClockCheck = CLOCK_CHECK_NODES;
+        haveMove = aborted = stopRequested = false;
+        nodes = qnodes = ttProbes = ttHits = ttCutoffs = cutNodes = firstMoveCutoffs = 0;
+        seldepth = 0;
+        for (int[] k : killers) k[0] = k[1] = Move.NONE;
+        for (int[] row : history) for (int sq=0; sq<64; sq++) row[sq] >>= 1;
+        tt.newSearch();
+        return this;
+    }
+
+    // Lazy SMP helper: starts at a different depth and rotates the root move order.
+    AlphaBeta asHelper(int id){
+        this.helperId = id;
+        return this;
+    }
 
-    public AlphaBeta(int depth, int movetimeMs){
-        this.maxDepth = Math.max(1, depth);
-        this.stopAt = movetimeMs > 0 ? (System.currentTimeMillis() + movetimeMs) : 0;
+    // Probe tb for won, drawn and lost positions below the root instead of searching them.
+    public AlphaBeta withTablebase(Tablebase tb){
+        this.tablebase = tb != null && tb.size() > 0 ? tb : null;
+        return this;
+    }
+
+    // Report the best k root moves, each with its own score and line (main thread only).
+    public AlphaBeta withMultiPv(int k){
+        this.multiPv = Math.max(1, Math.min(k, MoveGen.MAX_MOVES));
+        if (multiPv > 1){
+            lineMoves = new int[multiPv];
+            lineScores = new int[multiPv];
+            lineLength = new int[multiPv];
+            lines = new int[multiPv][MAX_PLY + 1];
+        }
+        return this;
+    }
+
+    // Asks a running search to return; safe to call from another thread.
+    public void stop(){ stopRequested = true; }
+
+    public long nodes(){ return nodes; }
+
+    // Called on the searching thread after each completed iteration (main thread only).
+    public AlphaBeta onIteration(Consumer<Info> listener){
+        this.onIteration = listener;
+        return this;
     }
 
     public static class Result {
@@ -23,106 +145,442 @@ public class AlphaBeta {
         public final int scoreCp;
         public final int depth;
         public final List<String> pv;
-        public Result(String bestMove,int scoreCp,int depth,List<String> pv){
-            this.bestMove=bestMove; this.scoreCp=scoreCp; this.depth=depth; this.pv=pv;
+        public final long nodes;
+        public final SearchStats stats; // null for results read back from the on-disk cache
+        public final List<Line> lines;  // with multi-PV, the best root moves best first; else empty
+        public Result(String bestMove,int scoreCp,int depth,List<String> pv,long nodes){
+            this(bestMove, scoreCp, depth, pv, nodes, null);
+        }
+        public Result(String bestMove,int scoreCp,int depth,List<String> pv,long nodes,SearchStats stats){
+            this(bestMove, scoreCp, depth, pv, nodes, stats, List.of());
+        }
+        public Result(String bestMove,int scoreCp,int depth,List<String> pv,long nodes,SearchStats stats,List<Line> lines){
+            this.bestMove=bestMove; this.scoreCp=scoreCp; this.depth=depth; this.pv=pv; this.nodes=nodes; this.stats=stats;
+            this.lines=lines;
+        }
+    }
+
+    // One multi-PV line: a root move, its white-relative score and the line it starts.
+    public static class Line {
+        public final String move;
+        public final int scoreCp;
+        public final List<String> pv;
+        public Line(String move, int scoreCp, List<String> pv){
+            this.move=move; this.scoreCp=scoreCp; this.pv=pv;
+        }
+    }
+
+    // Progress after one completed iteration. Score is white-relative; hashfull is per mille.
+    public static class Info {
+        public final int depth, seldepth, scoreCp, hashfull;
+        public final long nodes, nps, timeMs;
+        public final List<String> pv;
+        public Info(int depth, int seldepth, int scoreCp, long nodes, long timeMs, int hashfull, List<String> pv){
+            this.depth=depth; this.seldepth=seldepth; this.scoreCp=scoreCp; this.nodes=nodes; this.timeMs=timeMs;
+            this.nps = nodes * 1000 / Math.max(1, timeMs);
+            this.hashfull=hashfull; this.pv=pv;
+        }
+        public Info withNodes(long total){
+            return new Info(depth, seldepth, scoreCp, total, timeMs, hashfull, pv);
         }
     }
 
     public Result search(Board b){
+        eval = evaluator.attach(b);
+        try {
+            return iterate(b);
+        } finally {
+            b.setListener(null);
+        }
+    }
+
+    private Result iterate(Board b){
         String bestUci = "none";
-        int bestScore = b.whiteToMove()? Integer.MIN_VALUE : Integer.MAX_VALUE;
+        int bestScore = 0;
+        int bestDepth = 0;
         List<String> bestPv = new ArrayList<>();
+        List<Line> lines = List.of();
+        lineCount = 0;
 
-        for (int d=1; d<=maxDepth; d++){
-            SearchOut out = alphabetaRoot(b, d);
+        int prev = 0; // side-to-move relative score of the last completed iteration
+        int prevMove = Move.NONE, stable = 0;
+        long[] depthMs = new long[maxDepth];
+        for (int d=1 + (helperId & 1); d<=maxDepth; d++){
+            boolean multi = multiPv > 1 && helperId == 0;
+            SearchOut out = multi ? multiPvRoot(b, d) : aspirate(b, d, prev);
+            // an interrupted iteration is discarded whole: its scores are bounds, not values
             if (out.stopped) break;
-            if (out.bestMoveUci != null) {
-                bestUci = out.bestMoveUci;
-                bestScore = out.score;
-                bestPv = out.pv;
+            if (out.bestMove != Move.NONE) {
+                List<String> pv = pvLine();
+                if (multi) lines = lines(b);
+                stable = out.bestMove == prevMove ? stable + 1 : 0;
+                prevMove = out.bestMove;
+                haveMove = true;
+                prev = out.score;
+                bestUci = Move.uci(out.bestMove);
+                // scores are side-to-move relative inside the search; report white-relative
+                bestScore = b.whiteToMove() ? out.score : -out.score;
+                bestDepth = d;
+                depthMs[d-1] = time.elapsedMs();
+                bestPv = pv;
+                if (helperId == 0 && onIteration != null){
+                    onIteration.accept(new Info(d, seldepth, bestScore, nodes, time.elapsedMs(), tt.hashfull(), bestPv));
+                }
             }
-            if (stopAt!=0 && System.currentTimeMillis() >= stopAt) break;
+            if (stopped()) break;
+            // helpers run until the main thread stops them
+            if (helperId == 0 && !time.startNextIteration(stable)) break;
+        }
+        SearchStats stats = new SearchStats();
+        stats.nodes = nodes; stats.qnodes = qnodes;
+        stats.ttProbes = ttProbes; stats.ttHits = ttHits; stats.ttCutoffs = ttCutoffs;
+        stats.cutNodes = cutNodes; stats.firstMoveCutoffs = firstMoveCutoffs;
+        stats.timeMs = time.elapsedMs();
+        stats.depthMs = Arrays.copyOf(depthMs, bestDepth);
+        return new Result(bestUci, bestScore, bestDepth, bestPv, nodes, stats, lines);
+    }
+
+    private List<String> pvLine(){
+        List<String> pv = new ArrayList<>(pvLength[0]);
+        for (int i=0; i<pvLength[0]; i++) pv.add(Move.uci(pvTable[0][i]));
+        return pv;
+    }
+
+    private List<Line> lines(Board b){
+        List<Line> out = new ArrayList<>(lineCount);
+        for (int i=0; i<lineCount; i++){
+            List<String> pv = new ArrayList<>(lineLength[i]);
+            for (int j=0; j<lineLength[i]; j++) pv.add(Move.uci(lines[i][j]));
+            out.add(new Line(pv.get(0), b.whiteToMove() ? lineScores[i] : -lineScores[i], pv));
         }
-        return new Result(bestUci, bestScore, Math.min(maxDepth, bestPv.size()), bestPv);
+        return out;
     }
 
     private static class SearchOut {
-        String bestMoveUci; int score; boolean stopped; List<String> pv = new ArrayList<>();
+        int bestMove; int score; boolean stopped;
     }
 
-    private SearchOut alphabetaRoot(Board b, int depth){
-        SearchOut out = new SearchOut();
-        int alpha = -300000, beta = 300000;
-        int bestScore = b.whiteToMove()? -300000 : 300000;
-        String bestUci=null;
-        List<Move> moves = MoveGen.legalMoves(b);
+    // Searches a window around the previous score and widens it on the failing side
+    // until the score falls inside; shallow iterations use the full window.
+    private SearchOut aspirate(Board b, int depth, int prev){
+        if (!aspiration || depth < ASPIRATION_MIN_DEPTH || Math.abs(prev) > MATE - MAX_PLY)
+            return alphabetaRoot(b, depth, -INF, INF);
+        int delta = ASPIRATION_DELTA;
+        int alpha = prev - delta, beta = prev + delta;
+        while (true){
+            SearchOut out = alphabetaRoot(b, depth, alpha, beta);
+            if (out.stopped || (out.score > alpha && out.score < beta)) return out;
+            delta *= 2;
+            if (out.score <= alpha) alpha = delta > 1000 ? -INF : Math.max(-INF, alpha - delta);
+            else beta = delta > 1000 ? INF : Math.min(INF, beta + delta);
+        }
+    }
 
-        moves.sort((m1,m2)-> Integer.compare((m2.flags & Move.CAPTURE), (m1.flags & Move.CAPTURE)));
+    private SearchOut alphabetaRoot(Board b, int depth, int alpha, int beta){
+        SearchOut out = new SearchOut();
+        int alphaOrig = alpha;
+        int bestScore = -INF;
+        int bestMove = Move.NONE;
+        int[] moves = rootMoves;
+        int n = MoveGen.legal(b, moves);
+        orderRoot(b, moves, n);
+        long e = tt.probe(b.hash());
+        if (helperId > 0 && n > 2) rotate(moves, 1, n, helperId);
+        if (e != 0) toFront(moves, n, TranspositionTable.move(e));
 
-        for (Move m: moves){
+        pvLength[0] = 0;
+        for (int i=0; i<n; i++){
             if (stopped()) { out.stopped=true; break; }
+            int m = moves[i];
             b.make(m);
-            int sc = -alphabeta(b, depth-1, -beta, -alpha);
+            int sc;
+            if (i == 0 || !pvs) sc = -alphabeta(b, depth-1, 1, -beta, -alpha);
+            else {
+                sc = -alphabeta(b, depth-1, 1, -alpha-1, -alpha);
+                if (sc > alpha && sc < beta) sc = -alphabeta(b, depth-1, 1, -beta, -alpha);
+            }
             b.undo(m);
+            if (aborted) { out.stopped=true; break; }
 
-            if (b.whiteToMove()? sc>bestScore : sc<bestScore){
+            if (sc > bestScore){
                 bestScore = sc;
-                bestUci = m.uci();
-                out.pv = new ArrayList<>();
-                out.pv.add(bestUci);
+                bestMove = m;
+                updatePv(0, m);
             }
-            if (b.whiteToMove()? sc>alpha : sc<beta){
-                if (b.whiteToMove()) alpha=sc; else beta=sc;
+            if (sc > alpha) alpha = sc;
+            if (alpha >= beta) break;
+        }
+        out.score = bestScore; out.bestMove = bestMove;
+        if (!out.stopped && bestMove != Move.NONE){
+            int bound = bestScore >= beta ? TranspositionTable.BOUND_LOWER
+                      : bestScore > alphaOrig ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+            tt.store(b.hash(), bestMove, toTT(bestScore, 0), depth, bound);
+        }
+        return out;
+    }
+
+    // Multi-PV root: one pass that keeps the multiPv best moves with exact scores. Once
+    // that many are kept, a move is tried with a null window at the worst kept score and
+    // searched in full only when it beats it, so an extra line costs one more full-window
+    // search rather than another pass over the root. Last iteration's lines go first.
+    private SearchOut multiPvRoot(Board b, int depth){
+        SearchOut out = new SearchOut();
+        int[] moves = rootMoves;
+        int n = MoveGen.legal(b, moves);
+        orderRoot(b, moves, n);
+        for (int i=lineCount-1; i>=0; i--) toFront(moves, n, lineMoves[i]);
+        int k = Math.min(multiPv, n), kept = 0;
+        int[] keptMoves = new int[k], keptScores = new int[k], keptLength = new int[k];
+        int[][] keptLines = new int[k][];
+        for (int i=0; i<n; i++){
+            if (stopped()) { out.stopped=true; break; }
+            int m = moves[i];
+            int alpha = kept < k ? -INF : keptScores[k-1];
+            b.make(m);
+            int sc;
+            if (kept < k) sc = -alphabeta(b, depth-1, 1, -INF, INF);
+            else {
+                sc = -alphabeta(b, depth-1, 1, -alpha-1, -alpha);
+                if (sc > alpha) sc = -alphabeta(b, depth-1, 1, -INF, -alpha);
+            }
+            b.undo(m);
+            if (aborted) { out.stopped=true; break; }
+            if (kept == k && sc <= alpha) continue;
+
+            // insert after equal scores, dropping the worst line when full
+            int j = Math.min(kept, k - 1);
+            int[] line = kept < k ? lines[j] : keptLines[j];
+            while (j > 0 && keptScores[j-1] < sc){
+                keptMoves[j] = keptMoves[j-1]; keptScores[j] = keptScores[j-1];
+                keptLength[j] = keptLength[j-1]; keptLines[j] = keptLines[j-1];
+                j--;
             }
+            line[0] = m;
+            System.arraycopy(pvTable[1], 1, line, 1, pvLength[1] - 1);
+            keptMoves[j] = m; keptScores[j] = sc; keptLength[j] = pvLength[1]; keptLines[j] = line;
+            if (kept < k) kept++;
+        }
+        if (out.stopped || kept == 0) return out;
+
+        for (int i=0; i<kept; i++){
+            lineMoves[i] = keptMoves[i]; lineScores[i] = keptScores[i];
+            lineLength[i] = keptLength[i]; lines[i] = keptLines[i];
         }
-        out.score = bestScore; out.bestMoveUci=bestUci;
+        lineCount = kept;
+        out.bestMove = keptMoves[0];
+        out.score = keptScores[0];
+        System.arraycopy(keptLines[0], 0, pvTable[0], 0, keptLength[0]);
+        pvLength[0] = keptLength[0];
+        tt.store(b.hash(), out.bestMove, toTT(out.score, 0), depth, TranspositionTable.BOUND_EXACT);
         return out;
     }
 
-    private int alphabeta(Board b, int depth, int alpha, int beta){
-        if (stopped()) return Evaluation.evaluate(b);
-        List<Move> moves = MoveGen.legalMoves(b);
+    private int alphabeta(Board b, int depth, int ply, int alpha, int beta){
+        nodes++;
+        pvLength[ply] = ply;
+        if (ply > seldepth) seldepth = ply;
+        if (stopped()) { aborted = true; return 0; }
+        if (b.isRepetition() || b.getHalfmoveClock() >= 100) return 0;
 
-        if (depth==0) return quiescence(b, alpha, beta);
-        if (moves.isEmpty()){
-            int[] k = b.kingSquare(b.whiteToMove());
-            boolean inCheck = b.squareAttacked(k[0],k[1], !b.whiteToMove());
-            if (inCheck) return b.whiteToMove()? -29000 : 29000;
-            return 0;
+        boolean inCheck = b.inCheck();
+        if (inCheck && checkExtension && ply < MAX_PLY / 2) depth++;
+        boolean pvNode = beta - alpha > 1;
+
+        long key = b.hash();
+        long e = tt.probe(key);
+        ttProbes++;
+        int ttMove = Move.NONE;
+        if (e != 0){
+            ttHits++;
+            ttMove = TranspositionTable.move(e);
+            // no cutoffs on PV nodes, so the PV table gets the whole line
+            if (!pvNode && TranspositionTable.depth(e) >= depth){
+                int s = fromTT(TranspositionTable.score(e), ply);
+                int bound = TranspositionTable.bound(e);
+                if (bound == TranspositionTable.BOUND_EXACT
+                    || (bound == TranspositionTable.BOUND_LOWER && s >= beta)
+                    || (bound == TranspositionTable.BOUND_UPPER && s <= alpha)){ ttCutoffs++; return s; }
+            }
+        }
+
+        if (depth<=0 || ply >= MAX_PLY - 1) return quiescence(b, ply, alpha, beta);
+
+        // Tables at interior nodes only; leaves are left to quiescence. A hit goes to the
+        // TT as exact at any depth, so transpositions are cut there instead of probed again.
+        if (tablebase != null){
+            int v = tablebase.probe(b);
+            if (v != Tablebase.UNKNOWN){
+                int wdl = Tablebase.wdl(v);
+                int s = wdl > 0 ? TB_WIN - ply : wdl < 0 ? -TB_WIN + ply : 0;
+                tt.store(key, ttMove, toTT(s, ply), MAX_DEPTH, TranspositionTable.BOUND_EXACT);
+                return s;
+            }
         }
 
-        moves.sort((m1,m2)-> Integer.compare((m2.flags & Move.CAPTURE), (m1.flags & Move.CAPTURE)));
+        nullMoved[ply] = false;
+        if (nullMove && !pvNode && !inCheck && depth >= NULL_MOVE_MIN_DEPTH && !nullMoved[ply-1]
+            && hasPieces(b) && relativeEval(b) >= beta){
+            int r = 2 + depth / 4;
+            nullMoved[ply] = true;
+            b.makeNull();
+            int sc = -alphabeta(b, depth - 1 - r, ply+1, -beta, -beta+1);
+            b.undoNull();
+            nullMoved[ply] = false;
+            if (aborted) return 0;
+            if (sc >= beta) return sc > MATE - MAX_PLY ? beta : sc; // don't trust unproven mates
+        }
+
+        MovePicker picker = pickers[ply];
+        picker.init(b, ttMove, killers[ply][0], killers[ply][1]);
 
-        int best = -300000;
-        for (Move m: moves){
+        int alphaOrig = alpha;
+        int best = -INF, bestMove = Move.NONE, searched = 0;
+        for (int m; (m = picker.next()) != Move.NONE; ){
+            searched++;
+            boolean quiet = (Move.flags(m) & (Move.CAPTURE | Move.PROMOTION)) == 0;
             b.make(m);
-            int sc = -alphabeta(b, depth-1, -beta, -alpha);
+            int sc;
+            if (searched == 1) sc = -alphabeta(b, depth-1, ply+1, -beta, -alpha);
+            else {
+                int r = 0;
+                if (lmr && quiet && depth >= LMR_MIN_DEPTH && !inCheck && !b.inCheck()){
+                    r = Math.max(0, Math.min(LMR[Math.min(depth, MAX_PLY-1)][Math.min(searched, MoveGen.MAX_MOVES-1)] - (pvNode ? 1 : 0), depth - 2));
+                }
+                sc = alpha + 1; // forces the searches below when neither shortcut applies
+                if (r > 0) sc = -alphabeta(b, depth-1-r, ply+1, -alpha-1, -alpha);
+                if (sc > alpha && pvs) sc = -alphabeta(b, depth-1, ply+1, -alpha-1, -alpha);
+                if (sc > alpha && (!pvs || sc < beta)) sc = -alphabeta(b, depth-1, ply+1, -beta, -alpha);
+            }
             b.undo(m);
-            if (sc > best) best = sc;
-            if (best > alpha) alpha = best;
-            if (alpha >= beta) break;
+            if (aborted) return 0;
+            if (sc > best){ best = sc; bestMove = m; }
+            if (best > alpha){ alpha = best; updatePv(ply, m); }
+            if (alpha >= beta){
+                cutNodes++;
+                if (searched == 1) firstMoveCutoffs++;
+                if (quiet) rememberQuiet(m, depth, ply);
+                break;
+            }
         }
+        if (searched == 0) return inCheck ? -MATE + ply : 0;
+
+        int bound = best >= beta ? TranspositionTable.BOUND_LOWER
+                  : best > alphaOrig ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+        tt.store(key, bestMove, toTT(best, ply), depth, bound);
         return best;
     }
 
-    private int quiescence(Board b, int alpha, int beta){
-        int standPat = Evaluation.evaluate(b);
+    private int quiescence(Board b, int ply, int alpha, int beta){
+        nodes++;
+        qnodes++;
+        pvLength[ply] = ply;
+        if (ply > seldepth) seldepth = ply;
+        int standPat = relativeEval(b);
         if (standPat >= beta) return beta;
+        if (ply >= MAX_PLY - 1) return standPat;
         if (alpha < standPat) alpha = standPat;
 
-        List<Move> moves = MoveGen.legalMoves(b);
-        for (Move m: moves){
-            if ((m.flags & Move.CAPTURE)==0 && (m.flags & Move.PROMOTION)==0) continue;
+        MovePicker picker = pickers[ply];
+        picker.initQuiescence(b);
+        for (int m; (m = picker.next()) != Move.NONE; ){
+            // even winning the victim outright would leave us below alpha
+            if (qsFutility && (Move.flags(m) & Move.PROMOTION) == 0
+                && standPat + See.victimValue(b, m) + FUTILITY_MARGIN <= alpha) continue;
             b.make(m);
-            int sc = -quiescence(b, -beta, -alpha);
+            int sc = -quiescence(b, ply+1, -beta, -alpha);
             b.undo(m);
             if (sc >= beta) return beta;
-            if (sc > alpha) alpha = sc;
+            if (sc > alpha){ alpha = sc; updatePv(ply, m); }
         }
         return alpha;
     }
 
+    // m is the new best move at ply: the line from here is m followed by the child's line
+    private void updatePv(int ply, int m){
+        int[] row = pvTable[ply], child = pvTable[ply + 1];
+        row[ply] = m;
+        int len = pvLength[ply + 1];
+        System.arraycopy(child, ply + 1, row, ply + 1, len - (ply + 1));
+        pvLength[ply] = Math.max(len, ply + 1);
+    }
+
+    // killer and history bookkeeping for a quiet move that caused a beta cutoff
+    private void rememberQuiet(int m, int depth, int ply){
+        int[] k = killers[ply];
+        if (k[0] != m){ k[1] = k[0]; k[0] = m; }
+        int[] h = history[Move.piece(m)];
+        h[Move.to(m)] += depth * depth;
+        if (h[Move.to(m)] > HISTORY_MAX){
+            for (int[] row : history) for (int sq=0; sq<64; sq++) row[sq] >>= 1;
+        }
+    }
+
+    // side to move has something besides pawns, so zugzwang is unlikely enough for null move
+    private static boolean hasPieces(Board b){
+        int us = b.whiteToMove() ? Piece.WHITE : Piece.BLACK;
+        return (b.colorBB(us) & ~b.pieces(us, Piece.PAWN) & ~b.pieces(us, Piece.KING)) != 0;
+    }
+
+    private int relativeEval(Board b){
+        int e = eval.evaluate(b);
+        return b.whiteToMove() ? e : -e;
+    }
+
+    // Mate and tablebase scores count plies from the root, so they are stored relative to
+    // the node and stay valid at other plies. TB_WIN - MAX_PLY bounds both bands.
+    static int toTT(int score, int ply){
+        if (score > TB_WIN - MAX_PLY) return score + ply;
+        if (score < -TB_WIN + MAX_PLY) return score - ply;
+        return score;
+    }
+
+    static int fromTT(int score, int ply){
+        if (score > TB_WIN - MAX_PLY) return score - ply;
+        if (score < -TB_WIN + MAX_PLY) return score + ply;
+        return score;
+    }
+
+    private static void toFront(int[] moves, int n, int move){
+        for (int i=0; i<n; i++){
+            if (moves[i] == move){
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    private static void rotate(int[] moves, int from, int to, int by){
+        int len = to - from;
+        by %= len;
+        if (by == 0) return;
+        int[] tmp = new int[by];
+        System.arraycopy(moves, from, tmp, 0, by);
+        System.arraycopy(moves, from + by, moves, from, len - by);
+        System.arraycopy(tmp, 0, moves, to - by, by);
+    }
+
+    // root moves: captures by MVV-LVA ahead of quiets by history; insertion sort, n is small
+    private void orderRoot(Board b, int[] moves, int n){
+        for (int i=0; i<n; i++){
+            int m = moves[i];
+            int sc = (Move.flags(m) & Move.CAPTURE) != 0
+                   ? (1 << 24) + See.victimValue(b, m) * 8 - Piece.type(Move.piece(m))
+                   : history[Move.piece(m)][Move.to(m)];
+            int j = i;
+            while (j > 0 && rootScores[j-1] < sc){
+                moves[j] = moves[j-1]; rootScores[j] = rootScores[j-1]; j--;
+            }
+            moves[j] = m; rootScores[j] = sc;
+        }
+    }
+
+    // Called at every node: a volatile read, and the clock only every CLOCK_CHECK_NODES.
+    // Until the first iteration completes only an explicit stop() is honoured.
     private boolean stopped(){
-        return stopAt!=0 && System.currentTimeMillis() >= stopAt;
+        if (stopRequested || time.stopped()) return true;
+        if (--untilClockCheck > 0 || !haveMove) return false;
+        untilClockCheck = CLOCK_CHECK_NODES;
+        return time.hardExpired();
     }
 }
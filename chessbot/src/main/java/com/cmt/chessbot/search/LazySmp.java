@@ -0,0 +1,116 @@
+package com.cmt.chessbot.search;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.evaluation.Evaluation;
+import com.cmt.chessbot.evaluation.Evaluator;
+import com.cmt.chessbot.tablebase.Tablebase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+// Lazy SMP: helper threads search the same root on their own Board copies and
+// share only the transposition table. Only the main thread's result is returned;
+// the helpers exist to fill the table with useful entries.
+public class LazySmp {
+
+    private final TranspositionTable tt;
+    private final ExecutorService helpers;
+    private final int maxThreads;
+    private final Set<SearchFeature> features;
+    private final Tablebase tablebase;
+
+    public LazySmp(TranspositionTable tt, ExecutorService helpers, int maxThreads){
+        this(tt, helpers, maxThreads, SearchFeature.all());
+    }
+
+    public LazySmp(TranspositionTable tt, ExecutorService helpers, int maxThreads, Set<SearchFeature> features){
+        this(tt, helpers, maxThreads, features, Tablebase.empty());
+    }
+
+    public LazySmp(TranspositionTable tt, ExecutorService helpers, int maxThreads, Set<SearchFeature> features,
+                   Tablebase tablebase){
+        this.tt = tt;
+        this.helpers = helpers;
+        this.maxThreads = Math.max(1, maxThreads);
+        this.features = features;
+        this.tablebase = tablebase;
+    }
+
+    public int maxThreads(){ return maxThreads; }
+
+    public AlphaBeta.Result search(Board b, int depth, int movetimeMs, int threads){
+        return search(b, depth, movetimeMs, threads, Evaluation.CLASSIC);
+    }
+
+    public AlphaBeta.Result search(Board b, int depth, int movetimeMs, int threads, Evaluator evaluator){
+        return search(b, depth, TimeManager.movetime(movetimeMs), threads, evaluator);
+    }
+
+    // All threads share the time manager: the main thread makes the soft-limit decisions,
+    // and a hard stop or time.stop() from another thread halts every one of them.
+    public AlphaBeta.Result search(Board b, int depth, TimeManager time, int threads, Evaluator evaluator){
+        return search(b, depth, time, threads, evaluator, null);
+    }
+
+    // onIteration gets the main thread's progress, with node counts summed over all threads.
+    public AlphaBeta.Result search(Board b, int depth, TimeManager time, int threads, Evaluator evaluator,
+                                   Consumer<AlphaBeta.Info> onIteration){
+        return search(b, depth, time, threads, evaluator, onIteration, 1);
+    }
+
+    // With multiPv > 1 the main thread reports that many root moves; helpers search as usual.
+    public AlphaBeta.Result search(Board b, int depth, TimeManager time, int threads, Evaluator evaluator,
+                                   Consumer<AlphaBeta.Info> onIteration, int multiPv){
+        int n = Math.max(1, Math.min(threads, maxThreads));
+        tt.newSearch();
+        if (n == 1) return new AlphaBeta(depth, time, tt, evaluator, features).withTablebase(tablebase)
+            .withMultiPv(multiPv).onIteration(onIteration).search(b);
+
+        List<AlphaBeta> workers = new ArrayList<>(n - 1);
+        List<Future<AlphaBeta.Result>> futures = new ArrayList<>(n - 1);
+        for (int i=1; i<n; i++){
+            AlphaBeta helper = new AlphaBeta(depth + (i & 1), time, tt, evaluator, features).withTablebase(tablebase).asHelper(i);
+            Board copy = b.copy();
+            workers.add(helper);
+            futures.add(helpers.submit(() -> helper.search(copy)));
+        }
+
+        AlphaBeta mainSearch = new AlphaBeta(depth, time, tt, evaluator, features).withTablebase(tablebase).withMultiPv(multiPv);
+        if (onIteration != null){
+            // helper counters are read racily; good enough for progress reports
+            mainSearch.onIteration(info -> {
+                long total = info.nodes;
+                for (AlphaBeta w : workers) total += w.nodes();
+                onIteration.accept(info.withNodes(total));
+            });
+        }
+        AlphaBeta.Result main;
+        try {
+            main = mainSearch.search(b);
+        } finally {
+            for (AlphaBeta w : workers) w.stop(); // also when the main search or a listener throws
+        }
+
+        long nodes = main.nodes;
+        SearchStats stats = main.stats;
+        for (int i=0; i<futures.size(); i++){
+            Future<AlphaBeta.Result> f = futures.get(i);
+            if (f.cancel(false)) continue; // never started: the pool was busy
+            try {
+                AlphaBeta.Result r = f.get();
+                nodes += r.nodes;
+                stats.add(r.stats);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("helper search failed", ex.getCause());
+            }
+        }
+        return new AlphaBeta.Result(main.bestMove, main.scoreCp, main.depth, main.pv, nodes, stats, main.lines);
+    }
+}
@@ -0,0 +1,143 @@
+package com.cmt.chessbot.search;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.MoveGen;
+import com.cmt.chessbot.engine.Piece;
+
+// Staged move ordering for one ply. Moves are generated in batches and picked by
+// selection as they are needed, so a cutoff on an early move skips the rest of the
+// scoring and, for the hash move or a capture, the quiet generation entirely.
+//   1. hash move
+//   2. captures and queen promotions that do not lose material, by MVV-LVA
+//   3. the two killer moves for this ply
+//   4. quiet moves, by history score
+//   5. losing captures and underpromotions
+// Quiescence runs stage 2 only and drops the losing captures.
+final class MovePicker {
+    private static final int TT = 0, GEN_NOISY = 1, GOOD_NOISY = 2, KILLER_1 = 3, KILLER_2 = 4,
+                             GEN_QUIET = 5, QUIET = 6, BAD_NOISY = 7, DONE = 8;
+
+    private final int[] moves = new int[MoveGen.MAX_MOVES];
+    private final int[] scores = new int[MoveGen.MAX_MOVES];
+    private final int[] bad = new int[MoveGen.MAX_MOVES];
+    private final See see;
+    private final int[][] history; // [Piece][to square]
+
+    private Board b;
+    private int stage, cur, end, badCount, badCur;
+    private int ttMove, killer1, killer2;
+    private boolean quiescence;
+
+    MovePicker(See see, int[][] history){
+        this.see = see;
+        this.history = history;
+    }
+
+    void init(Board b, int ttMove, int killer1, int killer2){
+        this.b = b;
+        this.ttMove = ttMove; this.killer1 = killer1; this.killer2 = killer2;
+        this.quiescence = false;
+        this.stage = TT;
+        this.badCount = 0;
+    }
+
+    void initQuiescence(Board b){
+        this.b = b;
+        this.ttMove = this.killer1 = this.killer2 = Move.NONE;
+        this.quiescence = true;
+        this.stage = GEN_NOISY;
+        this.badCount = 0;
+    }
+
+    // Next move to search, or Move.NONE when the position is exhausted.
+    int next(){
+        while (true){
+            switch (stage){
+                case TT:
+                    stage = GEN_NOISY;
+                    if (ttMove != Move.NONE && MoveGen.isLegal(b, ttMove)) return ttMove;
+                    break;
+                case GEN_NOISY:
+                    end = MoveGen.legalNoisy(b, moves);
+                    cur = 0;
+                    for (int i=0; i<end; i++) scores[i] = noisyScore(moves[i]);
+                    stage = GOOD_NOISY;
+                    break;
+                case GOOD_NOISY:
+                    while (cur < end){
+                        int m = pickBest();
+                        if (m == ttMove) continue;
+                        if (losing(m)){
+                            if (!quiescence) bad[badCount++] = m;
+                            continue;
+                        }
+                        return m;
+                    }
+                    stage = quiescence ? DONE : KILLER_1;
+                    break;
+                case KILLER_1:
+                    stage = KILLER_2;
+                    if (usableKiller(killer1)) return killer1;
+                    break;
+                case KILLER_2:
+                    stage = GEN_QUIET;
+                    if (killer2 != killer1 && usableKiller(killer2)) return killer2;
+                    break;
+                case GEN_QUIET:
+                    end = MoveGen.legalQuiet(b, moves);
+                    cur = 0;
+                    for (int i=0; i<end; i++) scores[i] = history[Move.piece(moves[i])][Move.to(moves[i])];
+                    stage = QUIET;
+                    break;
+                case QUIET:
+                    while (cur < end){
+                        int m = pickBest();
+                        if (m == ttMove || m == killer1 || m == killer2) continue;
+                        return m;
+                    }
+                    stage = BAD_NOISY;
+                    badCur = 0;
+                    break;
+                case BAD_NOISY:
+                    if (badCur < badCount) return bad[badCur++];
+                    stage = DONE;
+                    break;
+                default:
+                    return Move.NONE;
+            }
+        }
+    }
+
+    private int pickBest(){
+        int best = cur;
+        for (int i=cur+1; i<end; i++) if (scores[i] > scores[best]) best = i;
+        int m = moves[best];
+        moves[best] = moves[cur]; scores[best] = scores[cur];
+        moves[cur] = m;
+        cur++;
+        return m;
+    }
+
+    // MVV-LVA: most valuable victim first, cheapest attacker breaking ties
+    private int noisyScore(int m){
+        int s = See.victimValue(b, m) * 8 - Piece.type(Move.piece(m));
+        if ((Move.flags(m) & Move.PROMOTION) != 0) s += See.VALUE[Piece.type(Move.promo(m))];
+        return s;
+    }
+
+    private boolean losing(int m){
+        int flags = Move.flags(m);
+        if ((flags & Move.PROMOTION) != 0 && Piece.type(Move.promo(m)) != Piece.QUEEN) return true;
+        if ((flags & Move.CAPTURE) == 0) return false;
+        // taking something at least as valuable as the capturer can't lose material
+        if (See.victimValue(b, m) >= See.VALUE[Piece.type(Move.piece(m))]) return false;
+        return see.see(b, m) < 0;
+    }
+
+    private boolean usableKiller(int k){
+        return k != Move.NONE && k != ttMove
+            && (Move.flags(k) & (Move.CAPTURE | Move.PROMOTION)) == 0
+            && MoveGen.isLegal(b, k);
+    }
+}
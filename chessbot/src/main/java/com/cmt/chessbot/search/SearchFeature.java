@@ -0,0 +1,23 @@
+package com.cmt.chessbot.search;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+// Individually switchable search enhancements, so each can be A/B tested on node
+// counts and time-to-depth. Config keys are chess.search.<property>, default on.
+public enum SearchFeature {
+    PVS("pvs"),                          // zero-window search of non-first moves, re-search on fail high
+    ASPIRATION("aspiration"),            // narrow root window around the previous iteration's score
+    NULL_MOVE("null-move"),              // pass the turn at reduced depth; prune if still >= beta
+    LMR("lmr"),                          // reduce late quiet moves, re-search if they beat alpha
+    CHECK_EXTENSION("check-extension"),  // search one ply deeper when the side to move is in check
+    QS_FUTILITY("qs-futility");          // skip captures in quiescence that cannot reach alpha
+
+    public final String property;
+
+    SearchFeature(String property){ this.property = property; }
+
+    public static Set<SearchFeature> all(){ return EnumSet.allOf(SearchFeature.class); }
+
+    public static Set<SearchFeature> none(){ return EnumSet.noneOf(SearchFeature.class); }
+}
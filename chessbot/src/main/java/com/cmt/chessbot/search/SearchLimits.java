@@ -0,0 +1,29 @@
+package com.cmt.chessbot.search;
+
+// What a request allows a search to spend: a depth cap, a fixed movetime, and/or a
+// game clock (remaining time and increment per side, moves to the next control).
+// Times are milliseconds; 0 means not given.
+public class SearchLimits {
+    public final int depth;
+    public final long movetimeMs;
+    public final long wtime, btime, winc, binc;
+    public final int movesToGo;
+
+    public SearchLimits(int depth, long movetimeMs, long wtime, long btime, long winc, long binc, int movesToGo){
+        this.depth = depth; this.movetimeMs = movetimeMs;
+        this.wtime = wtime; this.btime = btime; this.winc = winc; this.binc = binc;
+        this.movesToGo = movesToGo;
+    }
+
+    // The same limits within a server's caps; a search without movetime gets the movetime cap.
+    public SearchLimits capped(int maxDepth, long maxMovetimeMs){
+        long movetime = movetimeMs > 0 ? Math.min(movetimeMs, maxMovetimeMs) : maxMovetimeMs;
+        return new SearchLimits(Math.min(depth, maxDepth), movetime, wtime, btime, winc, binc, movesToGo);
+    }
+
+    public TimeManager timeManager(boolean whiteToMove, long overheadMs){
+        long left = whiteToMove ? wtime : btime;
+        if (left <= 0) return TimeManager.movetime(movetimeMs);
+        return TimeManager.clock(left, whiteToMove ? winc : binc, movesToGo, overheadMs).cap(movetimeMs);
+    }
+}
@@ -0,0 +1,55 @@
+package com.cmt.chessbot.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Counters of one finished search. Each thread counts in plain fields of its AlphaBeta;
+// LazySmp sums the threads' counters once they stop. Time to depth is the main thread's.
+public final class SearchStats {
+
+    long nodes, qnodes;
+    long ttProbes, ttHits, ttCutoffs;
+    long cutNodes, firstMoveCutoffs; // nodes that failed high, and those that did so on their first move
+    long timeMs;
+    long[] depthMs = new long[0];    // elapsed when depth i + 1 completed
+
+    public long nodes(){ return nodes; }
+    public long qnodes(){ return qnodes; }
+    public long ttProbes(){ return ttProbes; }
+    public long ttHits(){ return ttHits; }
+    public long ttCutoffs(){ return ttCutoffs; }
+    public long cutNodes(){ return cutNodes; }
+    public long firstMoveCutoffs(){ return firstMoveCutoffs; }
+    public long timeMs(){ return timeMs; }
+    public long[] depthMs(){ return depthMs.clone(); }
+
+    public long nps(){ return nodes * 1000 / Math.max(1, timeMs); }
+
+    // how often the first move searched was good enough: move ordering quality
+    public double firstMoveCutoffRate(){ return cutNodes == 0 ? 0 : (double) firstMoveCutoffs / cutNodes; }
+
+    public double ttHitRate(){ return ttProbes == 0 ? 0 : (double) ttHits / ttProbes; }
+
+    // adds a helper thread's counters
+    void add(SearchStats o){
+        nodes += o.nodes; qnodes += o.qnodes;
+        ttProbes += o.ttProbes; ttHits += o.ttHits; ttCutoffs += o.ttCutoffs;
+        cutNodes += o.cutNodes; firstMoveCutoffs += o.firstMoveCutoffs;
+    }
+
+    public Map<String,Object> toMap(){
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("nodes", nodes);
+        out.put("qnodes", qnodes);
+        out.put("nps", nps());
+        out.put("timeMs", timeMs);
+        out.put("ttProbes", ttProbes);
+        out.put("ttHits", ttHits);
+        out.put("ttCutoffs", ttCutoffs);
+        out.put("ttHitRate", ttHitRate());
+        out.put("cutNodes", cutNodes);
+        out.put("firstMoveCutoffRate", firstMoveCutoffRate());
+        out.put("depthMs", depthMs.clone());
+        return out;
+    }
+}
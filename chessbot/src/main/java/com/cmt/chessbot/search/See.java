@@ -0,0 +1,53 @@
+package com.cmt.chessbot.search;
+
+import com.cmt.chessbot.engine.Bitboards;
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.Piece;
+
+// Static exchange evaluation: material won by the mover after the best sequence
+// of recaptures on the target square, each side taking with its cheapest piece.
+// One instance per search thread; the swap list is reused between calls.
+final class See {
+
+    static final int[] VALUE = {100, 320, 330, 500, 900, 20000}; // indexed by Piece type
+
+    static int victimValue(Board b, int m){
+        if ((Move.flags(m) & Move.EN_PASSANT) != 0) return VALUE[Piece.PAWN];
+        int victim = b.pieceAt(Move.to(m));
+        return victim == Piece.NONE ? 0 : VALUE[Piece.type(victim)];
+    }
+
+    private final int[] gain = new int[32];
+
+    int see(Board b, int m){
+        int from = Move.from(m), to = Move.to(m), flags = Move.flags(m);
+        int d = 0;
+        gain[0] = victimValue(b, m);
+
+        long occ = b.occupied() ^ Bitboards.bit(from);
+        if ((flags & Move.EN_PASSANT) != 0) occ ^= Bitboards.bit(b.whiteToMove() ? to + 8 : to - 8);
+        int onSquare = (flags & Move.PROMOTION) != 0 ? Piece.type(Move.promo(m)) : Piece.type(Move.piece(m));
+        if ((flags & Move.PROMOTION) != 0) gain[0] += VALUE[onSquare] - VALUE[Piece.PAWN];
+        int side = b.whiteToMove() ? Piece.BLACK : Piece.WHITE;
+
+        while (d < 31){
+            long attackers = b.attackersTo(to, side, occ) & occ;
+            if (attackers == 0) break;
+            int type = Piece.PAWN;
+            long from2 = 0;
+            for (; type <= Piece.KING; type++){
+                from2 = attackers & b.pieces(side, type);
+                if (from2 != 0) break;
+            }
+            d++;
+            gain[d] = VALUE[onSquare] - gain[d-1];
+            if (Math.max(-gain[d-1], gain[d]) < 0) break; // neither side wants to continue
+            occ ^= from2 & -from2;
+            onSquare = type;
+            side ^= 1;
+        }
+        while (--d > 0) gain[d-1] = -Math.max(-gain[d-1], gain[d]);
+        return gain[0];
+    }
+}
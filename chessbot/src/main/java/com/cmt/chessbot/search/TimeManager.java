@@ -0,0 +1,76 @@
+package com.cmt.chessbot.search;
+
+// Time budget for one search, shared by every thread searching the same root.
+//   soft: checked between iterations; no new iteration starts past it. On a clock
+//         it is scaled by best-move stability: a root move that keeps changing
+//         earns more time, one that has held for several iterations less.
+//   hard: checked mid-iteration, every few thousand nodes; the iteration in
+//         progress is then thrown away.
+// stop() cancels from any thread; searchers see it on their next node.
+public final class TimeManager {
+
+    private static final int DEFAULT_MOVES_TO_GO = 30;
+    // soft limit scale by number of iterations the best move has survived
+    private static final double[] STABILITY = {1.6, 1.25, 1.0, 0.85, 0.7};
+
+    private final long start = System.nanoTime();
+    private final long softMs, hardMs; // 0 = unlimited
+    private final boolean flexible;    // soft limit may move with stability (clock mode)
+    private volatile boolean stopped;
+
+    private TimeManager(long softMs, long hardMs, boolean flexible){
+        this.softMs = softMs;
+        this.hardMs = hardMs;
+        this.flexible = flexible;
+    }
+
+    public static TimeManager infinite(){ return new TimeManager(0, 0, false); }
+
+    // fixed time per move: use all of it
+    public static TimeManager movetime(long ms){
+        return ms > 0 ? new TimeManager(ms, ms, false) : infinite();
+    }
+
+    // Remaining clock for the side to move, its increment and moves to the next
+    // time control (0 = sudden death). overheadMs is kept back for transport.
+    public static TimeManager clock(long timeMs, long incMs, int movesToGo, long overheadMs){
+        long usable = Math.max(1, timeMs - overheadMs);
+        int mtg = movesToGo > 0 ? Math.min(movesToGo, DEFAULT_MOVES_TO_GO) : DEFAULT_MOVES_TO_GO;
+        long soft = usable / mtg + incMs * 3 / 4;
+        long hard = Math.min(usable, Math.max(soft, Math.min(soft * 4, usable / 3 + incMs)));
+        // last move before the time control may use what is left
+        if (movesToGo == 1) hard = soft = usable;
+        return new TimeManager(Math.min(soft, hard), hard, true);
+    }
+
+    // tighter of the two, for a clock search that also carries a movetime cap
+    public TimeManager cap(long movetimeMs){
+        if (movetimeMs <= 0 || (hardMs > 0 && hardMs <= movetimeMs)) return this;
+        return new TimeManager(softMs > 0 ? Math.min(softMs, movetimeMs) : movetimeMs, movetimeMs, flexible);
+    }
+
+    public void stop(){ stopped = true; }
+
+    public boolean stopped(){ return stopped; }
+
+    public long elapsedMs(){ return (System.nanoTime() - start) / 1_000_000; }
+
+    // Reads the clock; called every few thousand nodes. Sets the shared flag so
+    // other threads stop without reading the clock themselves.
+    boolean hardExpired(){
+        if (stopped) return true;
+        if (hardMs > 0 && elapsedMs() >= hardMs) stopped = true;
+        return stopped;
+    }
+
+    // Called by the main thread after each completed iteration.
+    boolean startNextIteration(int stableIterations){
+        if (stopped) return false;
+        if (softMs == 0) return true;
+        double scale = flexible ? STABILITY[Math.min(stableIterations, STABILITY.length - 1)] : 1.0;
+        return elapsedMs() < Math.min(hardMs, (long) (softMs * scale));
+    }
+
+    public long softMs(){ return softMs; }
+    public long hardMs(){ return hardMs; }
+}
@@ -0,0 +1,99 @@
+package com.cmt.chessbot.search;
+
+// Fixed-size transposition table shared by every search in the process.
+//
+// Entries are two longs: (key ^ data, data). A reader recomputes key ^ data and
+// only trusts the entry if it matches the probed key, so a torn write from a
+// concurrent thread reads as a miss instead of a wrong hit. No locks are taken.
+//
+// data layout: bits 0-24 move, 25-40 score (signed 16), 41-48 depth,
+//              49-50 bound, 51-57 generation
+// Buckets hold two entries; a store overwrites the same key, else an empty slot,
+// else the slot with the lowest depth after an age penalty.
+public class TranspositionTable {
+
+    public static final int BOUND_NONE = 0, BOUND_UPPER = 1, BOUND_LOWER = 2, BOUND_EXACT = 3;
+
+    private static final int BUCKET = 4; // longs per bucket
+    private static final long MOVE_MASK = (1L << 25) - 1;
+
+    private final long[] table;
+    private final int bucketMask;
+    private volatile int generation;
+
+    public TranspositionTable(int sizeMb){
+        long bytes = Math.max(1, sizeMb) * 1024L * 1024L;
+        long buckets = Long.highestOneBit(bytes / (BUCKET * Long.BYTES));
+        buckets = Math.min(buckets, 1L << 28); // keep the backing array within int indexing
+        this.table = new long[(int)(buckets * BUCKET)];
+        this.bucketMask = (int)buckets - 1;
+    }
+
+    // Call once per search so older entries become preferred victims.
+    public void newSearch(){ generation = (generation + 1) & 127; }
+
+    public void clear(){ java.util.Arrays.fill(table, 0L); }
+
+    // Returns the packed data for key, or 0 on a miss.
+    public long probe(long key){
+        int i = index(key);
+        long d0 = table[i+1];
+        if ((table[i] ^ d0) == key && d0 != 0) return d0;
+        long d1 = table[i+3];
+        if ((table[i+2] ^ d1) == key && d1 != 0) return d1;
+        return 0L;
+    }
+
+    public void store(long key, int move, int score, int depth, int bound){
+        if (score > Short.MAX_VALUE || score < Short.MIN_VALUE) return;
+        int i = index(key);
+        int gen = generation;
+
+        int slot;
+        long d0 = table[i+1], d1 = table[i+3];
+        if ((table[i] ^ d0) == key) slot = i;
+        else if ((table[i+2] ^ d1) == key) slot = i + 2;
+        else if (d0 == 0) slot = i;
+        else if (d1 == 0) slot = i + 2;
+        else slot = worth(d0, gen) <= worth(d1, gen) ? i : i + 2;
+
+        long old = table[slot+1];
+        if ((table[slot] ^ old) == key){
+            // keep a deeper result from this search, and the old move if we have none
+            if (move == 0) move = move(old);
+            if (bound != BOUND_EXACT && generation(old) == gen && depth(old) > depth + 2) return;
+        }
+
+        long data = (move & MOVE_MASK)
+                  | ((long)(score & 0xFFFF) << 25)
+                  | ((long)(Math.max(0, Math.min(depth, 255))) << 41)
+                  | ((long)bound << 49)
+                  | ((long)gen << 51);
+        table[slot] = key ^ data;
+        table[slot+1] = data;
+    }
+
+    // Permille of sampled entries written during the current search.
+    public int hashfull(){
+        int gen = generation, used = 0, samples = Math.min(1000, table.length / 2);
+        for (int k=0; k<samples; k++){
+            long d = table[2*k + 1];
+            if (d != 0 && generation(d) == gen) used++;
+        }
+        return samples == 0 ? 0 : used * 1000 / samples;
+    }
+
+    public static int move(long data){ return (int)(data & MOVE_MASK); }
+    public static int score(long data){ return (short)(data >>> 25); }
+    public static int depth(long data){ return (int)((data >>> 41) & 0xFF); }
+    public static int bound(long data){ return (int)((data >>> 49) & 3); }
+    static int generation(long data){ return (int)((data >>> 51) & 127); }
+
+    private int index(long key){
+        return ((int)(key ^ (key >>> 32)) & bucketMask) * BUCKET;
+    }
+
+    private static int worth(long data, int gen){
+        return depth(data) - 4 * ((gen - generation(data)) & 127);
+    }
+}
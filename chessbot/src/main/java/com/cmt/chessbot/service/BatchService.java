@@ -0,0 +1,158 @@
+package com.cmt.chessbot.service;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.evaluation.Evaluators;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.SearchFeature;
+import com.cmt.chessbot.search.TimeManager;
+import com.cmt.chessbot.search.TranspositionTable;
+import com.cmt.chessbot.tablebase.Tablebase;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+// Evaluates many positions for offline annotation. Items run single-threaded on the batch
+// pool, whose threads each keep one AlphaBeta per evaluator (with its own transposition
+// table, history and move buffers) from item to item instead of building one per request.
+@Service
+public class BatchService {
+
+    private final ChessService chess;
+    private final Evaluators evaluators;
+    private final ExecutorService pool;
+    private final Set<SearchFeature> features;
+    private final Tablebase tablebase;
+    private final int ttMb;
+    private final int maxInFlight;
+    private final long maxMovetimeMs;
+    private final ThreadLocal<Map<String, AlphaBeta>> searchers = ThreadLocal.withInitial(HashMap::new);
+
+    public BatchService(ChessService chess, Evaluators evaluators, @Qualifier("batchPool") ExecutorService pool,
+                        Set<SearchFeature> searchFeatures, Tablebase tablebase,
+                        @Value("${chess.batch.tt-mb:8}") int ttMb,
+                        @Value("${chess.batch.max-in-flight:16}") int maxInFlight,
+                        @Value("${chess.batch.max-movetime-ms:5000}") long maxMovetimeMs) {
+        this.chess = chess;
+        this.evaluators = evaluators;
+        this.pool = pool;
+        this.features = searchFeatures;
+        this.tablebase = tablebase;
+        this.ttMb = ttMb;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxMovetimeMs = maxMovetimeMs;
+    }
+
+    // movetimeMs 0 = the configured maximum, which also caps larger values. The position is
+    // given as a FEN, parsed on the worker, or as a board already decoded (fen null).
+    public record Item(String fen, Board board, int depth, long movetimeMs, String eval) {
+        public Item(String fen, int depth, long movetimeMs, String eval) {
+            this(fen, null, depth, movetimeMs, eval);
+        }
+
+        public Item(Board board, int depth, long movetimeMs, String eval) {
+            this(null, board, depth, movetimeMs, eval);
+        }
+    }
+
+    // Results (or {"index", "error"}) go to sink as items finish, from pool threads, one at a time.
+    public Batch open(Consumer<Map<String,Object>> sink) {
+        return new Batch(sink);
+    }
+
+    private AlphaBeta.Result search(Board b, String evalName, int depth, TimeManager time) {
+        AlphaBeta searcher = searchers.get().computeIfAbsent(evalName, name ->
+            new AlphaBeta(depth, time, new TranspositionTable(ttMb), evaluators.get(name), features).withTablebase(tablebase));
+        return searcher.reuse(depth, time).search(b);
+    }
+
+    // One request's items. At most maxInFlight are queued or running at once: submit()
+    // blocks beyond that, so a streamed request body is read only as fast as the pool
+    // gets through it. close() waits for the items already submitted.
+    public final class Batch implements AutoCloseable {
+        private final Consumer<Map<String,Object>> sink;
+        private final Semaphore permits = new Semaphore(maxInFlight);
+        private final Set<TimeManager> running = ConcurrentHashMap.newKeySet();
+        private volatile boolean cancelled;
+        private int next;
+
+        private Batch(Consumer<Map<String,Object>> sink) {
+            this.sink = sink;
+        }
+
+        public boolean cancelled() { return cancelled; }
+
+        public void submit(Item item) throws InterruptedException {
+            int index = next++;
+            permits.acquire();
+            try {
+                pool.execute(() -> {
+                    try {
+                        run(index, item);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        // an item that could not even be parsed
+        public void reject(String error) {
+            emit(Map.of("index", next++, "error", error));
+        }
+
+        private void run(int index, Item item) {
+            if (cancelled) return;
+            long movetime = item.movetimeMs() > 0 ? Math.min(item.movetimeMs(), maxMovetimeMs) : maxMovetimeMs;
+            TimeManager time = TimeManager.movetime(movetime);
+            running.add(time);
+            if (cancelled) time.stop(); // cancel() may have missed it
+            Map<String,Object> out = new LinkedHashMap<>();
+            out.put("index", index);
+            try {
+                String evalName = evaluators.resolve(item.eval());
+                int depth = Math.max(1, Math.min(item.depth(), AlphaBeta.MAX_DEPTH));
+                Board pos = item.board() != null ? item.board() : Board.fromFEN(item.fen());
+                out.putAll(chess.evaluate(pos, evalName, depth, false, 1, b -> search(b, evalName, depth, time)));
+            } catch (RuntimeException e) {
+                out.put("fen", item.fen() != null ? item.fen() : item.board().toFEN());
+                out.put("error", e.getMessage() != null ? e.getMessage() : e.toString());
+            } finally {
+                running.remove(time);
+            }
+            if (!cancelled) emit(out);
+        }
+
+        private synchronized void emit(Map<String,Object> result) {
+            try {
+                sink.accept(result);
+            } catch (RuntimeException e) {
+                cancel(); // the client has gone away; stop spending time on it
+            }
+        }
+
+        // Skips queued items and stops running ones.
+        public void cancel() {
+            cancelled = true;
+            for (TimeManager t : running) t.stop();
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            permits.acquire(maxInFlight);
+            permits.release(maxInFlight);
+        }
+    }
+}
@@ -1,36 +1,358 @@
 package com.cmt.chessbot.service;
 
+import com.cmt.chessbot.book.OpeningBook;
+import com.cmt.chessbot.cache.AnalysisCache;
 import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.Perft;
+import com.cmt.chessbot.evaluation.Evaluators;
+import com.cmt.chessbot.metrics.EngineMetrics;
 import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.LazySmp;
+import com.cmt.chessbot.search.SearchLimits;
+import com.cmt.chessbot.search.TimeManager;
+import com.cmt.chessbot.tablebase.Tablebase;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
 
 @Service
 public class ChessService {
 
-    public Map<String,Object> evaluate(String fen, int depth, int movetimeMs) {
-        Board b = Board.fromFEN(fen);
-        AlphaBeta ab = new AlphaBeta(depth, movetimeMs);
-        AlphaBeta.Result r = ab.search(b);
-        return Map.of(
+    private static final String[] WDL_NAMES = {"loss", "draw", "win"}; // by Tablebase wdl + 1
+
+    private final LazySmp smp;
+    private final Evaluators evaluators;
+    private final long moveOverheadMs;
+    private final ExecutorService analysisPool;
+    private final AnalysisCache cache;
+    private final OpeningBook book;
+    private final RandomGenerator bookRandom;
+    private final Tablebase tablebase;
+    private final ExecutorService searchPool;
+    private final int maxDepth;
+    private final long maxMovetimeMs;
+    private final int maxMultiPv;
+    private final int maxPerftDepth, maxPerftHashMb;
+    private final ForkJoinPool perftPool;
+    private final EngineMetrics metrics;
+
+    public ChessService(LazySmp smp, Evaluators evaluators,
+                        @Value("${chess.search.move-overhead-ms:30}") long moveOverheadMs,
+                        @Qualifier("analysisPool") ExecutorService analysisPool, AnalysisCache cache,
+                        OpeningBook book, @Value("${chess.book.random:false}") boolean bookRandom,
+                        Tablebase tablebase, @Qualifier("searchPool") ExecutorService searchPool,
+                        @Value("${chess.search.max-depth:20}") int maxDepth,
+                        @Value("${chess.search.max-movetime-ms:10000}") long maxMovetimeMs,
+                        @Value("${chess.search.max-multi-pv:8}") int maxMultiPv,
+                        @Value("${chess.perft.max-depth:6}") int maxPerftDepth,
+                        @Value("${chess.perft.max-hash-mb:256}") int maxPerftHashMb,
+                        @Qualifier("perftPool") ForkJoinPool perftPool,
+                        EngineMetrics metrics) {
+        this.smp = smp;
+        this.evaluators = evaluators;
+        this.moveOverheadMs = moveOverheadMs;
+        this.analysisPool = analysisPool;
+        this.cache = cache;
+        this.book = book;
+        this.bookRandom = bookRandom ? RandomGenerator.getDefault() : null;
+        this.tablebase = tablebase;
+        this.searchPool = searchPool;
+        this.maxDepth = maxDepth;
+        this.maxMovetimeMs = maxMovetimeMs;
+        this.maxMultiPv = Math.max(1, maxMultiPv);
+        this.maxPerftDepth = maxPerftDepth;
+        this.maxPerftHashMb = maxPerftHashMb;
+        this.perftPool = perftPool;
+        this.metrics = metrics;
+    }
+
+    // limits as the server allows them
+    SearchLimits cap(SearchLimits limits) {
+        return limits.capped(maxDepth, maxMovetimeMs);
+    }
+
+    // Runs work on pool. Throws RejectedExecutionException when the pool and its queue are
+    // full. Completing or cancelling the future early stops time, so a search that is queued
+    // never starts and one that is running returns.
+    private CompletableFuture<Map<String,Object>> submit(ExecutorService pool, TimeManager time,
+                                                         Supplier<Map<String,Object>> work) {
+        CompletableFuture<Map<String,Object>> result = new CompletableFuture<>();
+        result.whenComplete((r, ex) -> time.stop());
+        pool.execute(() -> {
+            if (result.isDone()) return; // cancelled while queued
+            try {
+                result.complete(work.get());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    private record Answer(AlphaBeta.Result result, boolean cached) {}
+
+    // A cached result at least as deep as requested skips the search entirely.
+    private Answer search(Board b, String evalName, int depth, Function<Board, AlphaBeta.Result> searcher) {
+        AlphaBeta.Result hit = cache.get(b.hash(), evalName, depth);
+        metrics.lookup("cache", hit != null);
+        if (hit != null) return new Answer(hit, true);
+        AlphaBeta.Result r = searcher.apply(b);
+        metrics.search(r.stats);
+        cache.put(b.hash(), evalName, r);
+        return new Answer(r, false);
+    }
+
+    private Answer search(Board b, int depth, TimeManager time, int threads, String evalName) {
+        return search(b, evalName, depth, pos -> smp.search(pos, depth, time, threads, evaluators.get(evalName)));
+    }
+
+    // a search run outside this class, such as a game's
+    void recordSearch(AlphaBeta.Result r) {
+        metrics.search(r.stats);
+    }
+
+    // Runs work that has to finish, such as a game move, on the search pool.
+    <T> CompletableFuture<T> submit(Supplier<T> work) {
+        return CompletableFuture.supplyAsync(work, searchPool);
+    }
+
+    // With stats, a searched answer carries the search's counters (see SearchStats). With
+    // multiPv > 1 it has the best multiPv root moves as "lines", each with score and PV.
+    public CompletableFuture<Map<String,Object>> evaluate(String fen, SearchLimits limits, int threads, String eval,
+                                                        boolean stats, int multiPv) {
+        return evaluate(Board.fromFEN(fen), limits, threads, eval, stats, multiPv);
+    }
+
+    // The same for a position already decoded, e.g. from its packed form
+    public CompletableFuture<Map<String,Object>> evaluate(Board pos, SearchLimits limits, int threads, String eval,
+                                                        boolean stats, int multiPv) {
+        String evalName = evaluators.resolve(eval);
+        SearchLimits l = cap(limits);
+        int k = Math.max(1, Math.min(multiPv, maxMultiPv));
+        TimeManager time = l.timeManager(pos.whiteToMove(), moveOverheadMs);
+        return submit(searchPool, time, () -> evaluate(pos, evalName, l.depth, stats, k,
+            b -> smp.search(b, l.depth, time, threads, evaluators.get(evalName), null, k)));
+    }
+
+    // One /evaluate answer: from the tablebase, else the analysis cache, else searcher.
+    // BatchService passes its own per-thread searcher. Multi-PV always searches: the
+    // tablebase and the cache have one move per position.
+    Map<String,Object> evaluate(Board b, String evalName, int depth, boolean stats, int multiPv,
+                                Function<Board, AlphaBeta.Result> searcher) {
+        String fen = b.toFEN();
+        if (multiPv > 1) return multiPv(b, fen, evalName, stats, searcher);
+        Tablebase.RootMove tb = tablebase.root(b);
+        metrics.lookup("tablebase", tb != null);
+        if (tb != null) {
+            String uci = Move.uci(tb.move());
+            return Map.of(
+                "fen", fen,
+                "depth", 0,
+                "scoreCp", tablebaseScore(b, tb),
+                "bestMove", uci,
+                "pv", List.of(uci),
+                "eval", evalName,
+                "cached", false,
+                "tablebase", true,
+                "wdl", WDL_NAMES[tb.wdl() + 1],
+                "dtz", tb.dtz()
+            );
+        }
+        Answer a = search(b, evalName, depth, searcher);
+        AlphaBeta.Result r = a.result();
+        Map<String,Object> out = Map.of(
             "fen", fen,
             "depth", r.depth,
             "scoreCp", r.scoreCp,
             "bestMove", r.bestMove,
-            "pv", r.pv
+            "pv", r.pv,
+            "eval", evalName,
+            "cached", a.cached(),
+            "tablebase", false
         );
+        if (!stats || a.cached()) return out; // a cached result's stats are its original search's
+        out = new LinkedHashMap<>(out);
+        out.put("stats", r.stats.toMap());
+        return out;
     }
 
-    public Map<String,Object> bestMove(String fen, int depth, int movetimeMs) {
+    private Map<String,Object> multiPv(Board b, String fen, String evalName, boolean stats,
+                                       Function<Board, AlphaBeta.Result> searcher) {
+        AlphaBeta.Result r = searcher.apply(b);
+        metrics.search(r.stats);
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("fen", fen);
+        out.put("depth", r.depth);
+        out.put("scoreCp", r.scoreCp);
+        out.put("bestMove", r.bestMove);
+        out.put("pv", r.pv);
+        out.put("eval", evalName);
+        out.put("cached", false);
+        out.put("tablebase", false);
+        out.put("lines", r.lines.stream()
+            .map(l -> Map.of("move", l.move, "scoreCp", l.scoreCp, "pv", l.pv))
+            .toList());
+        if (stats) out.put("stats", r.stats.toMap());
+        return out;
+    }
+
+    // A book move (when useBook) or a tablebase move is played without searching.
+    public CompletableFuture<Map<String,Object>> bestMove(String fen, SearchLimits limits, int threads, String eval,
+                                                        boolean useBook) {
+        return bestMove(Board.fromFEN(fen), limits, threads, eval, useBook);
+    }
+
+    public CompletableFuture<Map<String,Object>> bestMove(Board b, SearchLimits limits, int threads, String eval,
+                                                        boolean useBook) {
+        Map<String,Object> known = knownMove(b, useBook);
+        if (known != null) return CompletableFuture.completedFuture(known);
+        String evalName = evaluators.resolve(eval);
+        SearchLimits l = cap(limits);
+        TimeManager time = l.timeManager(b.whiteToMove(), moveOverheadMs);
+        return submit(searchPool, time, () -> {
+            Answer a = search(b, l.depth, time, threads, evalName);
+            AlphaBeta.Result r = a.result();
+            return Map.of(
+                "bestMove", r.bestMove,
+                "scoreCp", r.scoreCp,
+                "pv", r.pv,
+                "depth", r.depth,
+                "cached", a.cached(),
+                "book", false,
+                "tablebase", false
+            );
+        });
+    }
+
+    // The book or tablebase answer for b, or null when b has to be searched.
+    Map<String,Object> knownMove(Board b, boolean useBook) {
+        int bookMove = useBook ? book.pick(b, bookRandom) : Move.NONE;
+        if (useBook) metrics.lookup("book", bookMove != Move.NONE);
+        if (bookMove != Move.NONE) {
+            String uci = Move.uci(bookMove);
+            return Map.of(
+                "bestMove", uci,
+                "scoreCp", 0,
+                "pv", List.of(uci),
+                "depth", 0,
+                "cached", false,
+                "book", true,
+                "tablebase", false
+            );
+        }
+        Tablebase.RootMove tb = tablebase.root(b);
+        metrics.lookup("tablebase", tb != null);
+        if (tb != null) {
+            String uci = Move.uci(tb.move());
+            return Map.of(
+                "bestMove", uci,
+                "scoreCp", tablebaseScore(b, tb),
+                "pv", List.of(uci),
+                "depth", 0,
+                "cached", false,
+                "book", false,
+                "tablebase", true,
+                "wdl", WDL_NAMES[tb.wdl() + 1],
+                "dtz", tb.dtz()
+            );
+        }
+        return null;
+    }
+
+    // white-relative, on the search's scale: won positions score just below mate
+    private static int tablebaseScore(Board b, Tablebase.RootMove tb) {
+        int score = tb.wdl() * (AlphaBeta.TB_WIN - tb.dtz());
+        return b.whiteToMove() ? score : -score;
+    }
+
+    // Searches on the analysis pool, passing every completed iteration to onInfo, and
+    // completes with the final result. Completing or cancelling the future early stops the
+    // search. Depth is capped as for /evaluate; a given movetime is kept, since the caller
+    // bounds a stream by its own timeout. Throws RejectedExecutionException when the pool is full.
+    public CompletableFuture<Map<String,Object>> analyze(String fen, SearchLimits limits, int threads, String eval,
+                                                        Consumer<Map<String,Object>> onInfo) {
         Board b = Board.fromFEN(fen);
-        AlphaBeta ab = new AlphaBeta(depth, movetimeMs);
-        AlphaBeta.Result r = ab.search(b);
-        return Map.of(
-            "bestMove", r.bestMove,
-            "scoreCp", r.scoreCp,
-            "pv", r.pv,
-            "depth", r.depth
-        );
+        String evalName = evaluators.resolve(eval);
+        SearchLimits l = limits.movetimeMs > 0 ? limits.capped(maxDepth, limits.movetimeMs) : cap(limits);
+        TimeManager time = l.timeManager(b.whiteToMove(), moveOverheadMs);
+        return submit(analysisPool, time, () -> {
+            AlphaBeta.Result r = smp.search(b, l.depth, time, threads, evaluators.get(evalName),
+                                            info -> onInfo.accept(info(info)));
+            metrics.search(r.stats);
+            cache.put(b.hash(), evalName, r);
+            return Map.of(
+                "bestMove", r.bestMove,
+                "scoreCp", r.scoreCp,
+                "depth", r.depth,
+                "pv", r.pv,
+                "nodes", r.nodes,
+                "eval", evalName
+            );
+        });
+    }
+
+    private static Map<String,Object> info(AlphaBeta.Info i) {
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("depth", i.depth);
+        out.put("seldepth", i.seldepth);
+        out.put("scoreCp", i.scoreCp);
+        out.put("nodes", i.nodes);
+        out.put("nps", i.nps);
+        out.put("timeMs", i.timeMs);
+        out.put("hashfull", i.hashfull);
+        out.put("pv", i.pv);
+        return out;
+    }
+
+    public Map<String,Object> cacheStats() {
+        return cache.stats();
+    }
+
+    // Counts on the search pool, so it is admitted like a search; a parallel count splits
+    // over the perft pool. Depth is 1..chess.perft.max-depth, the cache 0..chess.perft.max-hash-mb
+    // (0 = none), and a count is not cancellable once it has started.
+    public CompletableFuture<Map<String,Object>> perft(String fen, int depth, boolean parallel, int hashMb,
+                                                     boolean divide) {
+        if (depth < 1 || depth > maxPerftDepth)
+            throw new IllegalArgumentException("perft depth must be 1.." + maxPerftDepth + ", got " + depth);
+        if (hashMb < 0 || hashMb > maxPerftHashMb)
+            throw new IllegalArgumentException("perft hashMb must be 0.." + maxPerftHashMb + ", got " + hashMb);
+        Board b = Board.fromFEN(fen);
+        return submit(() -> perft(b, fen, depth, parallel, hashMb, divide));
+    }
+
+    private Map<String,Object> perft(Board b, String fen, int depth, boolean parallel, int hashMb,
+                                            boolean divide) {
+        Map<String,Object> out = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        long nodes;
+        if (divide) {
+            Map<String,Long> moves = (hashMb > 0 ? Perft.cached(hashMb) : new Perft()).divide(b, depth);
+            nodes = moves.values().stream().mapToLong(Long::longValue).sum();
+            out.put("divide", moves);
+        } else if (parallel) {
+            nodes = Perft.parallel(b, depth, perftPool, hashMb);
+        } else {
+            nodes = (hashMb > 0 ? Perft.cached(hashMb) : new Perft()).run(b, depth);
+        }
+        long elapsedNs = Math.max(1, System.nanoTime() - start);
+        out.put("fen", fen);
+        out.put("depth", depth);
+        out.put("nodes", nodes);
+        out.put("timeMs", elapsedNs / 1_000_000);
+        out.put("nps", nodes * 1_000_000_000L / elapsedNs);
+        return out;
     }
 }
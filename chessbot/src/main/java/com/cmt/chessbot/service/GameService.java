@@ -0,0 +1,213 @@
+package com.cmt.chessbot.service;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.Util;
+import com.cmt.chessbot.evaluation.Evaluators;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.SearchFeature;
+import com.cmt.chessbot.search.SearchLimits;
+import com.cmt.chessbot.search.TimeManager;
+import com.cmt.chessbot.search.TranspositionTable;
+import com.cmt.chessbot.session.GameSession;
+import com.cmt.chessbot.session.GameSessions;
+import com.cmt.chessbot.tablebase.Tablebase;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Games played move by move against the bot. Each game keeps its board and a searcher of
+// its own, so the bot's next search starts from the tables the last one left instead of
+// parsing a FEN and warming up from nothing, and repetitions of earlier positions count.
+// Game searches are single-threaded and skip the analysis cache, whose results know
+// nothing of a game's history.
+//
+// Games created with ponder keep searching after the bot moves, on the reply its line
+// expects, on the ponder pool: a few low-priority threads shared by all games. A game
+// that finds them busy doesn't ponder. When the expected reply comes, the pondered result
+// is played if it is deep enough, else the search resumes with everything pondering put
+// in the game's table; any other reply stops pondering at once.
+@Service
+public class GameService {
+
+    private final ChessService chess;
+    private final Evaluators evaluators;
+    private final Set<SearchFeature> features;
+    private final Tablebase tablebase;
+    private final GameSessions sessions;
+    private final int ttMb;
+    private final long moveOverheadMs;
+    private final ExecutorService ponderPool;
+    private final Semaphore ponderPermits; // one per ponder thread
+    private final long maxPonderMs;
+    private final AtomicLong ponderHits = new AtomicLong(), ponderMisses = new AtomicLong(), ponderSkipped = new AtomicLong();
+
+    public GameService(ChessService chess, Evaluators evaluators, Set<SearchFeature> searchFeatures,
+                       Tablebase tablebase, GameSessions sessions,
+                       @Value("${chess.session.tt-mb:4}") int ttMb,
+                       @Value("${chess.search.move-overhead-ms:30}") long moveOverheadMs,
+                       @Qualifier("ponderPool") ExecutorService ponderPool,
+                       @Value("${chess.ponder.threads:1}") int ponderThreads,
+                       @Value("${chess.ponder.max-ms:30000}") long maxPonderMs) {
+        this.chess = chess;
+        this.evaluators = evaluators;
+        this.features = searchFeatures;
+        this.tablebase = tablebase;
+        this.sessions = sessions;
+        this.ttMb = ttMb;
+        this.moveOverheadMs = moveOverheadMs;
+        this.ponderPool = ponderPool;
+        this.ponderPermits = new Semaphore(Math.max(1, ponderThreads));
+        this.maxPonderMs = maxPonderMs;
+    }
+
+    public Map<String,Object> create(String fen, String eval, boolean ponder) {
+        String start = fen != null ? fen : Util.START_FEN;
+        Board.fromFEN(start); // fail before allocating a table
+        String evalName = evaluators.resolve(eval);
+        AlphaBeta searcher = new AlphaBeta(1, TimeManager.movetime(0), new TranspositionTable(ttMb), evaluators.get(evalName), features)
+            .withTablebase(tablebase);
+        GameSession s = sessions.add(new GameSession(start, evalName, ponder, searcher));
+        synchronized (s) {
+            return state(s);
+        }
+    }
+
+    // null when there is no such game
+    public Map<String,Object> get(String id) {
+        GameSession s = sessions.get(id);
+        if (s == null) return null;
+        synchronized (s) {
+            return state(s);
+        }
+    }
+
+    public boolean delete(String id) {
+        return sessions.remove(id);
+    }
+
+    public Map<String,Object> stats() {
+        Map<String,Object> out = new LinkedHashMap<>(sessions.stats());
+        out.put("ponderHits", ponderHits.get());
+        out.put("ponderMisses", ponderMisses.get());
+        out.put("ponderSkipped", ponderSkipped.get());
+        return out;
+    }
+
+    // Plays move (UCI or SAN; null to let the bot move first), then the bot's reply when
+    // asked for, on the search pool. Null when there is no such game; the future fails with
+    // IllegalArgumentException for an illegal move or a finished game. It cannot be
+    // cancelled: a reply that has started belongs to the game.
+    public CompletableFuture<Map<String,Object>> move(String id, String move, boolean reply, SearchLimits limits,
+                                                      boolean useBook) {
+        GameSession s = sessions.get(id);
+        if (s == null) return null;
+        SearchLimits capped = chess.cap(limits);
+        return chess.submit(() -> play(s, move, reply, capped, useBook));
+    }
+
+    private Map<String,Object> play(GameSession s, String move, boolean reply, SearchLimits limits, boolean useBook) {
+        synchronized (s) {
+            Map<String,Object> out = new LinkedHashMap<>();
+            AlphaBeta.Result pondered = null;
+            if (move != null) {
+                if (!s.status().equals("ongoing")) throw new IllegalArgumentException("game is over: " + s.status());
+                int m = s.parse(move);
+                if (m == Move.NONE) throw new IllegalArgumentException("illegal move: " + move);
+                out.put("expected", s.expected(m));
+                if (s.pondering()) {
+                    pondered = s.stopPondering(m);
+                    (pondered != null ? ponderHits : ponderMisses).incrementAndGet();
+                    out.put("ponderHit", pondered != null);
+                }
+                s.play(m);
+            } else {
+                s.stopPondering(Move.NONE);
+            }
+            if (reply && s.status().equals("ongoing")) {
+                out.put("reply", reply(s, limits, useBook, pondered));
+                if (s.ponders() && s.status().equals("ongoing")) ponder(s);
+            }
+            out.putAll(state(s));
+            return out;
+        }
+    }
+
+    private Map<String,Object> reply(GameSession s, SearchLimits limits, boolean useBook, AlphaBeta.Result pondered) {
+        Board b = s.board();
+        Map<String,Object> known = chess.knownMove(b, useBook);
+        if (known != null) {
+            String uci = (String) known.get("bestMove");
+            s.play(s.parse(uci), List.of(uci));
+            return known;
+        }
+        boolean deepEnough = pondered != null && pondered.depth >= limits.depth;
+        AlphaBeta.Result r = deepEnough ? pondered
+            : s.searcher().reuse(limits.depth, limits.timeManager(b.whiteToMove(), moveOverheadMs)).search(b);
+        if (!deepEnough) chess.recordSearch(r);
+        s.play(s.parse(r.bestMove), r.pv);
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("bestMove", r.bestMove);
+        out.put("scoreCp", r.scoreCp);
+        out.put("pv", r.pv);
+        out.put("depth", r.depth);
+        out.put("nodes", r.nodes);
+        out.put("book", false);
+        out.put("tablebase", false);
+        out.put("pondered", deepEnough);
+        if (r.pv.size() > 1) out.put("ponder", r.pv.get(1));
+        return out;
+    }
+
+    // Starts the searcher on the position after the reply the bot's line expects.
+    private void ponder(GameSession s) {
+        List<String> pv = s.pv();
+        if (pv.size() < 2) return; // book and tablebase moves come without a line
+        int expected = s.parse(pv.get(1));
+        if (expected == Move.NONE) return;
+        if (!ponderPermits.tryAcquire()) { ponderSkipped.incrementAndGet(); return; }
+        Board pos = s.board().copy();
+        pos.make(expected);
+        TimeManager time = TimeManager.movetime(maxPonderMs);
+        AtomicInteger depth = new AtomicInteger();
+        AlphaBeta searcher = s.searcher().reuse(AlphaBeta.MAX_DEPTH, time).onIteration(i -> depth.set(i.depth));
+        try {
+            Future<AlphaBeta.Result> f = ponderPool.submit(() -> {
+                try {
+                    return searcher.search(pos);
+                } finally {
+                    searcher.onIteration(null); // before the future completes, so the reply search has none
+                    ponderPermits.release();
+                }
+            });
+            s.ponder(expected, time, f, depth);
+        } catch (RejectedExecutionException e) {
+            ponderPermits.release();
+        }
+    }
+
+    private static Map<String,Object> state(GameSession s) {
+        Map<String,Object> out = new LinkedHashMap<>();
+        out.put("id", s.id());
+        out.put("fen", s.board().toFEN());
+        out.put("startFen", s.startFen());
+        out.put("moves", s.moves());
+        out.put("status", s.status());
+        out.put("eval", s.eval());
+        out.put("pondering", s.pondering());
+        if (s.pondering()) out.put("ponderDepth", s.ponderDepth());
+        return out;
+    }
+}
@@ -0,0 +1,128 @@
+package com.cmt.chessbot.session;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.MoveGen;
+import com.cmt.chessbot.engine.San;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.TimeManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// One game against the bot. The board is kept with its move history, so repetitions are
+// seen, and the searcher keeps its transposition table, killers and history from one
+// move to the next. Not thread-safe: callers synchronize on the session.
+//
+// With ponder on, the searcher keeps working in the background between the bot's move
+// and the opponent's reply, on the position after the reply it expects.
+public final class GameSession {
+
+    private final String id = UUID.randomUUID().toString();
+    private final String startFen;
+    private final String eval;
+    private final boolean ponder;
+    private final Board board;
+    private final AlphaBeta searcher;
+    private final List<String> moves = new ArrayList<>();
+    private List<String> pv = List.of(); // the bot's last line, starting with its move
+    private volatile Pondering pondering; // background search on the expected reply, or null
+    volatile long lastUsedNanos;
+
+    private record Pondering(int move, TimeManager time, Future<AlphaBeta.Result> result, AtomicInteger depth) {}
+
+    public GameSession(String startFen, String eval, boolean ponder, AlphaBeta searcher){
+        this.startFen = startFen;
+        this.eval = eval;
+        this.ponder = ponder;
+        this.board = Board.fromFEN(startFen);
+        this.searcher = searcher;
+    }
+
+    public String id(){ return id; }
+    public String startFen(){ return startFen; }
+    public String eval(){ return eval; }
+    public boolean ponders(){ return ponder; }
+    public boolean pondering(){ return pondering != null; }
+
+    // the last iteration the background search completed, 0 when not pondering
+    public int ponderDepth(){
+        Pondering p = pondering;
+        return p == null ? 0 : p.depth().get();
+    }
+    public Board board(){ return board; }
+    public AlphaBeta searcher(){ return searcher; }
+    public List<String> moves(){ return List.copyOf(moves); }
+    public List<String> pv(){ return pv; }
+
+    // The legal move given in UCI or SAN, or Move.NONE.
+    public int parse(String move){
+        int[] legal = new int[MoveGen.MAX_MOVES];
+        int n = MoveGen.legal(board, legal);
+        for (int i=0; i<n; i++) if (Move.uci(legal[i]).equalsIgnoreCase(move)) return legal[i];
+        return San.parse(board, move);
+    }
+
+    public void play(int move){
+        board.make(move);
+        moves.add(Move.uci(move));
+    }
+
+    // Plays the bot's move, the first of line.
+    public void play(int move, List<String> line){
+        play(move);
+        pv = line;
+    }
+
+    // move is the reply the bot's last line expected
+    public boolean expected(int move){
+        return pv.size() > 1 && pv.get(1).equals(Move.uci(move));
+    }
+
+    // Records a background search of the searcher, on the position after move, that runs
+    // until time is stopped; depth is kept up to date by the search.
+    public void ponder(int move, TimeManager time, Future<AlphaBeta.Result> result, AtomicInteger depth){
+        pondering = new Pondering(move, time, result, depth);
+    }
+
+    // Stops the background search and waits for it to let go of the searcher. Returns its
+    // last completed iteration when it was on move (a ponder hit), else null.
+    public AlphaBeta.Result stopPondering(int move){
+        Pondering p = pondering;
+        if (p == null) return null;
+        pondering = null;
+        p.time().stop();
+        AlphaBeta.Result r = null;
+        boolean interrupted = false;
+        while (true){
+            try {
+                r = p.result().get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true; // the searcher must be free before anyone else uses it
+            } catch (ExecutionException e) {
+                break;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        return p.move() == move && r != null && r.depth > 0 ? r : null;
+    }
+
+    // For a session being dropped: stops the background search without waiting.
+    void close(){
+        Pondering p = pondering;
+        if (p != null) p.time().stop();
+    }
+
+    // "ongoing", "checkmate", "stalemate", "threefold" or "fifty-move"
+    public String status(){
+        if (MoveGen.legal(board, new int[MoveGen.MAX_MOVES]) == 0) return board.inCheck() ? "checkmate" : "stalemate";
+        if (board.repetitions() >= 2) return "threefold";
+        if (board.getHalfmoveClock() >= 100) return "fifty-move";
+        return "ongoing";
+    }
+}
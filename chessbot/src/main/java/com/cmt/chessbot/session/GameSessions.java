@@ -0,0 +1,81 @@
+package com.cmt.chessbot.session;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Open games by id. Sessions idle for longer than the timeout are dropped whenever the
+// store is used; past maxSessions (each holds its own transposition table) creating one
+// drops the least recently used.
+public class GameSessions {
+
+    private final int maxSessions;
+    private final long idleTimeoutNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, GameSession> sessions = new LinkedHashMap<>(16, 0.75f, true);
+    private long expired, evicted;
+
+    public GameSessions(int maxSessions, long idleTimeoutMs){
+        this(maxSessions, idleTimeoutMs, System::nanoTime);
+    }
+
+    GameSessions(int maxSessions, long idleTimeoutMs, LongSupplier clock){
+        this.maxSessions = Math.max(1, maxSessions);
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        this.clock = clock;
+    }
+
+    public synchronized GameSession add(GameSession s){
+        long now = clock.getAsLong();
+        expire(now);
+        Iterator<GameSession> lru = sessions.values().iterator();
+        while (sessions.size() >= maxSessions){
+            lru.next().close();
+            lru.remove();
+            evicted++;
+        }
+        s.lastUsedNanos = now;
+        sessions.put(s.id(), s);
+        return s;
+    }
+
+    // null when there is no such game, or it has been evicted
+    public synchronized GameSession get(String id){
+        long now = clock.getAsLong();
+        expire(now);
+        GameSession s = sessions.get(id);
+        if (s != null) s.lastUsedNanos = now;
+        return s;
+    }
+
+    public synchronized boolean remove(String id){
+        GameSession s = sessions.remove(id);
+        if (s != null) s.close();
+        return s != null;
+    }
+
+    public synchronized int size(){ return sessions.size(); }
+
+    public synchronized Map<String,Object> stats(){
+        expire(clock.getAsLong());
+        return Map.of(
+            "sessions", sessions.size(),
+            "maxSessions", maxSessions,
+            "expired", expired,
+            "evicted", evicted
+        );
+    }
+
+    // access order puts the longest idle first
+    private void expire(long now){
+        for (Iterator<GameSession> it = sessions.values().iterator(); it.hasNext(); ){
+            GameSession s = it.next();
+            if (now - s.lastUsedNanos < idleTimeoutNanos) break;
+            s.close();
+            it.remove();
+            expired++;
+        }
+    }
+}
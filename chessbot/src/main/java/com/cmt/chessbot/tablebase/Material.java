@@ -0,0 +1,169 @@
+package com.cmt.chessbot.tablebase;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Piece;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// One table's material, e.g. KQvKR, and the position index inside it. The stronger side
+// plays white in the table; positions with the colours swapped are probed mirrored
+// (ranks flipped, colours and side to move swapped).
+//
+// Index = side to move (0 = white) then one square per slot, 6 bits each. Slots are
+// white king, white pieces queen..pawn, black king, black pieces; identical pieces take
+// their squares in ascending order, so each position has exactly one index.
+final class Material {
+
+    private static final String LETTERS = "PNBRQ";
+    private static final int[] VALUE = {1, 3, 3, 5, 9};
+
+    final int key;       // non-king piece counts, 3 bits per (colour, type)
+    final String name;
+    final int[] pieces;  // Piece index of each slot
+    final int count;
+    final long size;     // 2 * 64^count
+
+    private Material(int key){
+        this.key = key;
+        this.name = name(key);
+        this.count = pieceCount(key);
+        this.pieces = new int[count];
+        int i = 0;
+        for (int color=Piece.WHITE; color<=Piece.BLACK; color++){
+            pieces[i++] = Piece.make(color, Piece.KING);
+            for (int type=Piece.QUEEN; type>=Piece.PAWN; type--){
+                for (int n=0; n<count(key, color, type); n++) pieces[i++] = Piece.make(color, type);
+            }
+        }
+        this.size = 2L << (6 * count);
+    }
+
+    // canonical orientation of key
+    static Material of(int key){
+        int flipped = flip(key);
+        int sw = strength(key, Piece.WHITE), sb = strength(key, Piece.BLACK);
+        return new Material(sw > sb || (sw == sb && key >= flipped) ? key : flipped);
+    }
+
+    // "KQvKR" style; the sides may come in either order
+    static Material of(String name){
+        String[] sides = name.toUpperCase().split("V");
+        if (sides.length != 2 || !sides[0].startsWith("K") || !sides[1].startsWith("K"))
+            throw new IllegalArgumentException("bad material: " + name);
+        int key = 0;
+        for (int color=Piece.WHITE; color<=Piece.BLACK; color++){
+            String s = sides[color];
+            for (int i=1; i<s.length(); i++){
+                int type = LETTERS.indexOf(s.charAt(i));
+                if (type < 0) throw new IllegalArgumentException("bad material: " + name);
+                key += 1 << shift(color, type);
+            }
+        }
+        return of(key);
+    }
+
+    static int key(Board b){
+        int key = 0;
+        for (int color=Piece.WHITE; color<=Piece.BLACK; color++)
+            for (int type=Piece.PAWN; type<=Piece.QUEEN; type++)
+                key |= Long.bitCount(b.pieces(color, type)) << shift(color, type);
+        return key;
+    }
+
+    static int flip(int key){
+        return ((key & 0x7FFF) << 15) | (key >>> 15);
+    }
+
+    private static int shift(int color, int type){ return 3 * (color * 5 + type); }
+    private static int count(int key, int color, int type){ return (key >>> shift(color, type)) & 7; }
+
+    private static int pieceCount(int key){
+        int n = 2;
+        for (int color=Piece.WHITE; color<=Piece.BLACK; color++)
+            for (int type=Piece.PAWN; type<=Piece.QUEEN; type++) n += count(key, color, type);
+        return n;
+    }
+
+    private static int strength(int key, int color){
+        int s = 0;
+        for (int type=Piece.PAWN; type<=Piece.QUEEN; type++) s += VALUE[type] * count(key, color, type);
+        return s;
+    }
+
+    private static String name(int key){
+        StringBuilder sb = new StringBuilder();
+        for (int color=Piece.WHITE; color<=Piece.BLACK; color++){
+            sb.append(color == Piece.WHITE ? "K" : "vK");
+            for (int type=Piece.QUEEN; type>=Piece.PAWN; type--) sb.repeat(LETTERS.charAt(type), count(key, color, type));
+        }
+        return sb.toString();
+    }
+
+    // Materials one capture or promotion away, which the generator needs first.
+    Set<Material> children(){
+        Set<Material> out = new LinkedHashSet<>();
+        for (int color=Piece.WHITE; color<=Piece.BLACK; color++){
+            for (int type=Piece.PAWN; type<=Piece.QUEEN; type++){
+                if (count(key, color, type) == 0) continue;
+                int without = key - (1 << shift(color, type));
+                out.add(of(without));
+                if (type != Piece.PAWN) continue;
+                for (int promo=Piece.KNIGHT; promo<=Piece.QUEEN; promo++) out.add(of(without + (1 << shift(color, promo))));
+            }
+        }
+        return out;
+    }
+
+    long index(Board b, boolean flip){
+        int[] sqs = new int[count];
+        for (int i=0; i<count; ){
+            int p = pieces[i];
+            long bb = b.pieces(flip ? (p + 6) % 12 : p);
+            for (; bb != 0; bb &= bb - 1){
+                int sq = Long.numberOfTrailingZeros(bb);
+                sqs[i++] = flip ? sq ^ 56 : sq;
+            }
+        }
+        canonicalize(sqs);
+        return index(b.whiteToMove() != flip, sqs);
+    }
+
+    long index(boolean whiteToMove, int[] sqs){
+        long idx = whiteToMove ? 0 : 1;
+        for (int i=0; i<count; i++) idx = (idx << 6) | sqs[i];
+        return idx;
+    }
+
+    // fills sqs and returns whether white is to move
+    boolean decode(long idx, int[] sqs){
+        for (int i=count-1; i>=0; i--){ sqs[i] = (int) (idx & 63); idx >>>= 6; }
+        return idx == 0;
+    }
+
+    // sorts each run of identical pieces
+    void canonicalize(int[] sqs){
+        for (int i=1; i<count; i++){
+            for (int j=i; j>0 && pieces[j] == pieces[j-1] && sqs[j] < sqs[j-1]; j--){
+                int t = sqs[j]; sqs[j] = sqs[j-1]; sqs[j-1] = t;
+            }
+        }
+    }
+
+    // distinct squares, no pawn on the first or last rank, identical pieces in ascending order
+    boolean valid(int[] sqs){
+        long seen = 0;
+        for (int i=0; i<count; i++){
+            long bit = 1L << sqs[i];
+            if ((seen & bit) != 0) return false;
+            seen |= bit;
+            if (Piece.type(pieces[i]) == Piece.PAWN && (sqs[i] < 8 || sqs[i] >= 56)) return false;
+            if (i > 0 && pieces[i] == pieces[i-1] && sqs[i] < sqs[i-1]) return false;
+        }
+        return true;
+    }
+
+    @Override public boolean equals(Object o){ return o instanceof Material m && m.key == key; }
+    @Override public int hashCode(){ return key; }
+    @Override public String toString(){ return name; }
+}
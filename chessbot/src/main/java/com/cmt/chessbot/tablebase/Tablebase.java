@@ -0,0 +1,280 @@
+package com.cmt.chessbot.tablebase;
+
+import com.cmt.chessbot.engine.Bitboards;
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.MoveGen;
+import com.cmt.chessbot.engine.Piece;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Endgame tables built by TablebaseGenerator: one file per material, holding a byte per
+// position in deflate-compressed blocks. Files are memory-mapped; blocks are inflated
+// on demand into a shared lock-free cache.
+//
+// A value v is 0 for a draw, dtz for a win (v > 0) and -(dtz + 1) for a loss, from the
+// side to move's view. dtz counts plies to the next capture or pawn move (or mate) with
+// best play; the 50-move rule is not modelled.
+public class Tablebase implements AutoCloseable {
+
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+    public static final int WIN = 1, DRAW = 0, LOSS = -1;
+    public static final String SUFFIX = ".cbtb";
+    public static final int MAX_PIECES = 4; // the largest tables TablebaseGenerator builds
+
+    // file: magic, version, material key, block count, block offsets (count + 1 longs), blocks
+    private static final int MAGIC = 0x43425442; // "CBTB"
+    private static final int VERSION = 1;
+    private static final int BLOCK = 1 << 15;    // positions per block
+    private static final int HEADER = 16;
+
+    private final Map<Integer, Table> tables = new HashMap<>(); // by canonical material key
+    private final int maxPieces;
+    private final BlockCache cache;
+    private final List<FileChannel> channels = new ArrayList<>();
+
+    public record RootMove(int move, int wdl, int dtz) {}
+
+    Tablebase(int maxPieces, int cacheBlocks){
+        this.maxPieces = maxPieces;
+        this.cache = new BlockCache(cacheBlocks);
+    }
+
+    public static Tablebase empty(){ return new Tablebase(0, 0); }
+
+    // Maps every table file in dir with at most maxPieces pieces.
+    public static Tablebase open(Path dir, int maxPieces, int cacheBlocks){
+        Tablebase tb = new Tablebase(maxPieces, cacheBlocks);
+        try (Stream<Path> files = Files.list(dir)){
+            for (Path f : (Iterable<Path>) files.filter(p -> p.toString().endsWith(SUFFIX)).sorted()::iterator){
+                tb.map(f);
+            }
+        } catch (IOException e) {
+            tb.close();
+            throw new UncheckedIOException("cannot read tablebase directory " + dir, e);
+        }
+        return tb;
+    }
+
+    private void map(Path file) throws IOException {
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+        channels.add(ch);
+        MappedByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        if (ch.size() < HEADER || map.getInt(0) != MAGIC || map.getInt(4) != VERSION)
+            throw new IllegalArgumentException("not a tablebase file: " + file);
+        Material m = Material.of(map.getInt(8));
+        if (m.key != map.getInt(8)) throw new IllegalArgumentException("non-canonical table: " + file);
+        if (m.count > maxPieces) return;
+        int blocks = map.getInt(12);
+        long[] offsets = new long[blocks + 1];
+        for (int i=0; i<=blocks; i++) offsets[i] = map.getLong(HEADER + 8 * i);
+        tables.put(m.key, new Table(m, tables.size(), null, map, offsets));
+    }
+
+    // in-memory table, used while generating
+    void add(Material m, byte[] values){
+        tables.put(m.key, new Table(m, tables.size(), values, null, null));
+    }
+
+    boolean has(Material m){ return tables.containsKey(m.key); }
+
+    public int maxPieces(){ return maxPieces; }
+
+    public int size(){ return tables.size(); }
+
+    public List<String> names(){
+        return tables.values().stream().map(t -> t.material.name).sorted().toList();
+    }
+
+    public static int wdl(int value){ return Integer.signum(value); }
+
+    public static int dtz(int value){ return value > 0 ? value : value < 0 ? -value - 1 : 0; }
+
+    // Value of b for the side to move, or UNKNOWN when b has castling rights, a possible
+    // en passant capture, too many pieces, or no table.
+    public int probe(Board b){
+        if (b.getCastling() != 0) return UNKNOWN;
+        int n = Long.bitCount(b.occupied());
+        if (n > maxPieces) return UNKNOWN;
+        if (b.pieces(Piece.WHITE, Piece.KING) == 0 || b.pieces(Piece.BLACK, Piece.KING) == 0) return UNKNOWN; // not a real position
+        if (n == 2) return 0; // bare kings
+        if (b.getEpFile() != -1 && epCapturePossible(b)) return UNKNOWN;
+        int key = Material.key(b);
+        Table t = tables.get(key);
+        boolean flip = false;
+        if (t == null){
+            t = tables.get(Material.flip(key));
+            flip = true;
+            if (t == null) return UNKNOWN;
+        }
+        return t.value(t.material.index(b, flip));
+    }
+
+    // the pawn that just moved two squares can be taken en passant
+    private static boolean epCapturePossible(Board b){
+        boolean white = b.whiteToMove();
+        long pawn = Bitboards.bit((white ? 24 : 32) + b.getEpFile());
+        long ours = b.pieces(white ? Piece.WHITE : Piece.BLACK, Piece.PAWN);
+        return ((Bitboards.east(pawn) | Bitboards.west(pawn)) & ours) != 0;
+    }
+
+    // Best move at the root: a win with the shortest dtz (mating first), else a draw, else
+    // the loss that lasts longest. Null when b or any move leads outside the tables, or
+    // when b is not a legal position (the side not to move in check).
+    public RootMove root(Board b){
+        if (probe(b) == UNKNOWN || b.squareAttacked(b.kingSquare(!b.whiteToMove()), b.whiteToMove())) return null;
+        int[] moves = new int[MoveGen.MAX_MOVES];
+        int n = MoveGen.legal(b, moves);
+        int best = Move.NONE, bestRank = Integer.MIN_VALUE, bestWdl = 0, bestDtz = 0;
+        for (int i=0; i<n; i++){
+            int m = moves[i];
+            boolean zeroing = (Move.flags(m) & Move.CAPTURE) != 0 || Piece.type(Move.piece(m)) == Piece.PAWN;
+            b.make(m);
+            int v = probe(b);
+            boolean mate = v < 0 && b.inCheck() && MoveGen.legal(b, new int[MoveGen.MAX_MOVES]) == 0;
+            b.undo(m);
+            if (v == UNKNOWN) return null;
+            int wdl = -wdl(v);
+            int dtz = 1 + (zeroing ? 0 : dtz(v));
+            int rank = wdl == WIN ? 1_000_000 - 2 * dtz + (mate ? 1 : 0)
+                     : wdl == DRAW ? 0 : -1_000_000 + dtz;
+            if (rank > bestRank){ bestRank = rank; best = m; bestWdl = wdl; bestDtz = wdl == DRAW ? 0 : dtz; }
+        }
+        return best == Move.NONE ? null : new RootMove(best, bestWdl, bestDtz);
+    }
+
+    static byte encode(int wdl, int dtz){
+        return (byte) (wdl > 0 ? Math.min(dtz, 127) : wdl < 0 ? -Math.min(dtz, 127) - 1 : 0);
+    }
+
+    static void write(Path file, Material m, byte[] values){
+        int blocks = (int) ((values.length + BLOCK - 1) / BLOCK);
+        List<byte[]> packed = new ArrayList<>(blocks);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        byte[] buf = new byte[BLOCK + 1024];
+        try {
+            for (int i=0; i<blocks; i++){
+                deflater.reset();
+                deflater.setInput(values, i * BLOCK, Math.min(BLOCK, values.length - i * BLOCK));
+                deflater.finish();
+                int len = deflater.deflate(buf);
+                if (!deflater.finished()) throw new IllegalStateException("deflate buffer too small");
+                packed.add(Arrays.copyOf(buf, len));
+            }
+        } finally {
+            deflater.end();
+        }
+        long offset = HEADER + 8L * (blocks + 1);
+        ByteBuffer header = ByteBuffer.allocate((int) offset);
+        header.putInt(MAGIC).putInt(VERSION).putInt(m.key).putInt(blocks);
+        for (byte[] p : packed){ header.putLong(offset); offset += p.length; }
+        header.putLong(offset).flip();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING)){
+            while (header.hasRemaining()) ch.write(header);
+            for (byte[] p : packed){
+                ByteBuffer bb = ByteBuffer.wrap(p);
+                while (bb.hasRemaining()) ch.write(bb);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot write " + file, e);
+        }
+    }
+
+    @Override
+    public void close(){
+        for (FileChannel ch : channels){
+            try {
+                ch.close();
+            } catch (IOException ignored) {
+                // read-only mapping; nothing to lose
+            }
+        }
+        channels.clear();
+    }
+
+    private final class Table {
+        final Material material;
+        final int id;
+        final byte[] values;          // in-memory table, or null when mapped
+        final MappedByteBuffer map;
+        final long[] offsets;
+
+        Table(Material material, int id, byte[] values, MappedByteBuffer map, long[] offsets){
+            this.material = material; this.id = id; this.values = values; this.map = map; this.offsets = offsets;
+        }
+
+        int value(long idx){
+            if (values != null) return values[(int) idx];
+            int block = (int) (idx / BLOCK);
+            long key = ((long) id << 32) | block;
+            byte[] data = cache.get(key);
+            if (data == null){
+                data = inflate(block);
+                cache.put(key, data);
+            }
+            return data[(int) (idx % BLOCK)];
+        }
+
+        private byte[] inflate(int block){
+            int start = (int) offsets[block], len = (int) (offsets[block + 1] - start);
+            byte[] out = new byte[(int) Math.min(BLOCK, material.size - (long) block * BLOCK)];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(map.slice(start, len));
+                int got = inflater.inflate(out);
+                if (got != out.length) throw new IllegalStateException("short tablebase block in " + material.name);
+                return out;
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("corrupt tablebase block in " + material.name, e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+
+    // Inflated blocks in a direct-mapped table, like the transposition table: a block's
+    // slot is fixed by its key and a newer block replaces whatever is there. No locks, so
+    // search threads never wait on each other; a Block's fields are final, so a reader sees
+    // a whole block or the one before it. Two threads may occasionally inflate the same block.
+    private static final class BlockCache {
+        private record Block(long key, byte[] data) {}
+
+        private final Block[] slots;
+        private final int mask;
+
+        BlockCache(int capacity){
+            this.slots = new Block[Math.max(1, Integer.highestOneBit(capacity))];
+            this.mask = slots.length - 1;
+        }
+
+        byte[] get(long key){
+            Block b = slots[slot(key)];
+            return b != null && b.key == key ? b.data : null;
+        }
+
+        void put(long key, byte[] data){ slots[slot(key)] = new Block(key, data); }
+
+        // table id in the high word, block number in the low: mix both into the slot
+        private int slot(long key){
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & mask;
+        }
+    }
+}
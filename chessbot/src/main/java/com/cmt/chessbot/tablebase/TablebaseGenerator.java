@@ -0,0 +1,251 @@
+package com.cmt.chessbot.tablebase;
+
+import com.cmt.chessbot.engine.Bitboards;
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.MoveGen;
+import com.cmt.chessbot.engine.Piece;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Builds Tablebase files by retrograde analysis, generating the tables each one converts
+// into (by capture or promotion) first. Up to Tablebase.MAX_PIECES pieces; 3-piece tables
+// take a few seconds each, 4-piece ones about a minute.
+//
+//   mvn compile exec:java -Dexec.mainClass=com.cmt.chessbot.tablebase.TablebaseGenerator -Dexec.args="tb KQvK KRvK KPvK KQvKR"
+// args: output directory, then materials
+//
+// Positions are generated without en passant rights: after a double push inside a table,
+// a possible en passant reply is ignored.
+public class TablebaseGenerator {
+
+    // WDL pass states
+    private static final byte OPEN = 0, WIN = 1, LOSS = 2, DRAW = 3, ILLEGAL = 4;
+
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of(args[0]);
+        Files.createDirectories(dir);
+        try (Tablebase tb = Tablebase.open(dir, Tablebase.MAX_PIECES, 64)){
+            for (int i=1; i<args.length; i++) build(Material.of(args[i]), tb, dir);
+        }
+    }
+
+    // Generates m and whatever it converts into, smallest first, skipping tables tb already has.
+    static void build(Material m, Tablebase tb, Path dir){
+        if (m.count <= 2 || tb.has(m)) return;
+        if (m.count > Tablebase.MAX_PIECES) throw new IllegalArgumentException(m + ": at most " + Tablebase.MAX_PIECES + " pieces");
+        for (Material child : m.children()) build(child, tb, dir);
+        long start = System.nanoTime();
+        byte[] values = generate(m, tb);
+        if (dir != null){
+            try {
+                Tablebase.write(dir.resolve(m.name + Tablebase.SUFFIX), m, values);
+            } catch (UncheckedIOException e) {
+                throw new UncheckedIOException("cannot write " + m.name, e.getCause());
+            }
+            System.out.printf("%s: %d positions in %d ms%n", m.name, values.length, (System.nanoTime() - start) / 1_000_000);
+        }
+        tb.add(m, values);
+    }
+
+    // Values of every position of m; deps must hold every table m converts into.
+    static byte[] generate(Material m, Tablebase deps){
+        int size = (int) m.size;
+        byte[] wdl = new byte[size];
+        byte[] left = new byte[size]; // moves not yet known to lose for us (unsigned)
+        byte[] out = new byte[size];
+        Walker w = new Walker(m, deps);
+
+        // WDL: seed from terminal positions and conversions, then walk back through
+        // in-table moves. A position wins if some move reaches a lost position and
+        // loses once every move reaches a won one.
+        IntQueue queue = new IntQueue();
+        for (int idx=0; idx<size; idx++){
+            if (!w.load(idx)){ wdl[idx] = ILLEGAL; continue; }
+            int pending = 0;
+            boolean win = false;
+            for (int i=0; i<w.n; i++){
+                int m1 = w.moves[i];
+                if (inTable(m1)){ pending++; continue; }
+                int v = w.convert(m1);
+                if (v < 0) win = true;
+                else if (v == 0) pending++; // a drawn conversion never becomes a loss for us
+            }
+            if (win) wdl[idx] = WIN;
+            else if (w.n == 0) wdl[idx] = w.board.inCheck() ? LOSS : DRAW;
+            else if (pending == 0) wdl[idx] = LOSS;
+            else { left[idx] = (byte) pending; continue; }
+            if (wdl[idx] != DRAW) queue.add(idx);
+        }
+        int[] parents = new int[MoveGen.MAX_MOVES];
+        while (!queue.isEmpty()){
+            int c = queue.poll();
+            int np = w.unmoves(c, parents, true);
+            for (int i=0; i<np; i++){
+                int p = parents[i];
+                if (wdl[p] != OPEN) continue;
+                if (wdl[c] == LOSS){ wdl[p] = WIN; queue.add(p); }
+                else if (--left[p] == 0){ wdl[p] = LOSS; queue.add(p); }
+            }
+        }
+
+        // DTZ: breadth first from positions whose distance is fixed by a zeroing move or
+        // mate, walking back through non-pawn moves only.
+        List<IntQueue> layers = new ArrayList<>();
+        layers.add(new IntQueue());
+        layers.add(new IntQueue());
+        for (int idx=0; idx<size; idx++){
+            if (wdl[idx] == OPEN) wdl[idx] = DRAW;
+            if (wdl[idx] != WIN && wdl[idx] != LOSS) continue;
+            w.load(idx);
+            int quiet = 0;
+            boolean zeroWin = false;
+            for (int i=0; i<w.n; i++){
+                int m1 = w.moves[i];
+                boolean pawn = Piece.type(Move.piece(m1)) == Piece.PAWN;
+                if (inTable(m1) && !pawn){ quiet++; continue; }
+                int v = inTable(m1) ? (wdl[w.child(m1)] == LOSS ? -1 : 1) : w.convert(m1);
+                if (v < 0) zeroWin = true;
+            }
+            if (wdl[idx] == WIN && zeroWin){
+                out[idx] = Tablebase.encode(Tablebase.WIN, 1);
+                layers.get(1).add(idx);
+            } else if (wdl[idx] == LOSS){
+                left[idx] = (byte) quiet;
+                if (quiet == 0){
+                    int dtz = w.n == 0 ? 0 : 1;
+                    out[idx] = Tablebase.encode(Tablebase.LOSS, dtz);
+                    layers.get(dtz).add(idx);
+                }
+            }
+        }
+        for (int k=0; k<layers.size(); k++){
+            IntQueue layer = layers.get(k);
+            while (!layer.isEmpty()){
+                int c = layer.poll();
+                int np = w.unmoves(c, parents, false);
+                for (int i=0; i<np; i++){
+                    int p = parents[i];
+                    if (out[p] != 0) continue;
+                    if (wdl[c] == LOSS && wdl[p] == WIN) out[p] = Tablebase.encode(Tablebase.WIN, k + 1);
+                    else if (wdl[c] == WIN && wdl[p] == LOSS && --left[p] == 0) out[p] = Tablebase.encode(Tablebase.LOSS, k + 1);
+                    else continue;
+                    if (layers.size() == k + 1) layers.add(new IntQueue());
+                    layers.get(k + 1).add(p);
+                }
+            }
+        }
+        return out;
+    }
+
+    // stays in the same table: no capture, no promotion (castling never arises)
+    private static boolean inTable(int m){
+        return (Move.flags(m) & (Move.CAPTURE | Move.PROMOTION)) == 0;
+    }
+
+    // Decodes positions onto one reusable Board and enumerates moves and un-moves.
+    private static final class Walker {
+        final Material m;
+        final Tablebase deps;
+        final Board board = new Board();
+        final int[] sqs, tmp;
+        final int[] moves = new int[MoveGen.MAX_MOVES];
+        int n;
+
+        Walker(Material m, Tablebase deps){
+            this.m = m; this.deps = deps;
+            this.sqs = new int[m.count];
+            this.tmp = new int[m.count];
+        }
+
+        // sets up idx and its legal moves; false if idx is not a legal position
+        boolean load(int idx){
+            boolean white = m.decode(idx, sqs);
+            if (!m.valid(sqs)) return false;
+            board.set(m.pieces, sqs, m.count, white);
+            if (board.squareAttacked(board.kingSquare(!white), white)) return false;
+            n = MoveGen.legal(board, moves);
+            return true;
+        }
+
+        int child(int move){
+            board.make(move);
+            int idx = (int) m.index(board, false);
+            board.undo(move);
+            return idx;
+        }
+
+        // value of a capture or promotion, from the opponent's view, out of the smaller tables
+        int convert(int move){
+            board.make(move);
+            int v = deps.probe(board);
+            board.undo(move);
+            if (v == Tablebase.UNKNOWN)
+                throw new IllegalStateException(m.name + ": missing table after " + Move.uci(move));
+            return v;
+        }
+
+        // Positions of this table that reach c by one in-table move (pawn pushes only when
+        // withPawns); returns how many were written to out.
+        int unmoves(int c, int[] out, boolean withPawns){
+            boolean whiteToMove = m.decode(c, sqs);
+            int mover = whiteToMove ? Piece.BLACK : Piece.WHITE;
+            long occ = 0;
+            for (int sq : sqs) occ |= 1L << sq;
+            int np = 0;
+            for (int i=0; i<m.count; i++){
+                int p = m.pieces[i];
+                if (Piece.color(p) != mover) continue;
+                int sq = sqs[i];
+                long from;
+                switch (Piece.type(p)){
+                    case Piece.PAWN -> {
+                        if (!withPawns) continue;
+                        // white pawns move towards row 0, so they came from sq + 8
+                        int back = mover == Piece.WHITE ? 8 : -8;
+                        int prev = sq + back;
+                        from = 0;
+                        if (prev >= 8 && prev < 56 && (occ & (1L << prev)) == 0){
+                            from |= 1L << prev;
+                            int row = sq >> 3;
+                            if (row == (mover == Piece.WHITE ? 4 : 3) && (occ & (1L << (prev + back))) == 0) from |= 1L << (prev + back);
+                        }
+                    }
+                    case Piece.KNIGHT -> from = Bitboards.knightAttacks(sq) & ~occ;
+                    case Piece.BISHOP -> from = Bitboards.bishopAttacks(sq, occ) & ~occ;
+                    case Piece.ROOK -> from = Bitboards.rookAttacks(sq, occ) & ~occ;
+                    case Piece.QUEEN -> from = Bitboards.queenAttacks(sq, occ) & ~occ;
+                    default -> from = Bitboards.kingAttacks(sq) & ~occ;
+                }
+                for (; from != 0; from &= from - 1){
+                    System.arraycopy(sqs, 0, tmp, 0, m.count);
+                    tmp[i] = Long.numberOfTrailingZeros(from);
+                    m.canonicalize(tmp);
+                    out[np++] = (int) m.index(mover == Piece.WHITE, tmp);
+                }
+            }
+            return np;
+        }
+    }
+
+    // growable FIFO of ints
+    private static final class IntQueue {
+        private int[] a = new int[1024];
+        private int head, tail;
+
+        void add(int v){
+            if (tail == a.length) a = Arrays.copyOf(a, a.length * 2);
+            a[tail++] = v;
+        }
+
+        boolean isEmpty(){ return head == tail; }
+
+        int poll(){ return a[head++]; }
+    }
+}
@@ -1,13 +1,34 @@
 package com.cmt.chessbot;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SpringBootTest
+@AutoConfigureMockMvc
 class ChessbotApplicationTests {
 
+	@Autowired
+	MockMvc mvc;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void perftDepthOrHashOutOfRangeIsABadRequest() throws Exception {
+		for (String depth : new String[]{"0", "99"}) {
+			mvc.perform(post("/api/chess/perft").contentType(MediaType.APPLICATION_JSON).content("{\"depth\": " + depth + "}"))
+				.andExpect(status().isBadRequest());
+		}
+		mvc.perform(post("/api/chess/perft").contentType(MediaType.APPLICATION_JSON).content("{\"depth\": 3, \"hashMb\": 100000}"))
+			.andExpect(status().isBadRequest());
+	}
+
 }
@@ -0,0 +1,102 @@
+package com.cmt.chessbot.book;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.San;
+import com.cmt.chessbot.engine.Util;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpeningBookTest {
+
+    private static final String PGN = """
+        [Event "a"]
+        [Result "1-0"]
+
+        1. e4 e5 {open game} 2. Nf3 (2. f4 exf4) Nc6 3. Bb5 $1 a6 1-0
+
+        [Event "b"]
+        [Result "1/2-1/2"]
+
+        1.e4 c5 2.Nf3 d6 ; Najdorf next
+        3.d4 cxd4 4.Nxd4 Nf6 1/2-1/2
+
+        [Event "c"]
+        [Result "0-1"]
+
+        1. d4 d5 2. c4 e6 0-1
+
+        [Event "d"]
+        [Result "1/2-1/2"]
+
+        1. e4 e5 2. Nc3 1/2-1/2
+
+        [Event "e"]
+        [FEN "8/8/8/8/8/8/8/K6k w - - 0 1"]
+        [Result "*"]
+
+        1. Kb2 *
+        """;
+
+    @Test
+    void importedBookAnswersFromStartPosition(@TempDir Path dir) throws IOException {
+        Path pgn = dir.resolve("games.pgn"), bin = dir.resolve("book.bin");
+        Files.writeString(pgn, PGN);
+        PgnImporter imp = new PgnImporter(6, 1);
+        imp.read(pgn);
+        int n = imp.write(bin);
+        assertEquals(n * OpeningBook.ENTRY, Files.size(bin));
+
+        try (OpeningBook book = OpeningBook.open(bin)){
+            assertEquals(n, book.size());
+            Board start = Board.fromFEN(Util.START_FEN);
+            List<OpeningBook.Entry> moves = book.lookup(start.hash());
+            // e4: win (2) + two draws (1 each); d4 lost for white and is dropped at min weight 1
+            assertEquals(1, moves.size());
+            assertEquals("e2e4", Move.uci(moves.get(0).move()));
+            assertEquals(4, moves.get(0).weight());
+            assertEquals("e2e4", Move.uci(book.pick(start, null)));
+
+            start.make(moves.get(0).move());
+            List<OpeningBook.Entry> replies = book.lookup(start.hash());
+            // e5 lost once (0) and drew once (1), c5 drew once (1)
+            assertEquals(2, replies.size());
+            assertEquals(1, replies.get(0).weight());
+            SplittableRandom random = new SplittableRandom(1);
+            for (int i=0; i<20; i++){
+                String m = Move.uci(book.pick(start, random));
+                assertTrue(m.equals("e7e5") || m.equals("c7c5"), m);
+            }
+            // plies past maxPly are not in the book
+            assertEquals(Move.NONE, book.pick(Board.fromFEN("r1bqkbnr/1ppp1ppp/p1n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 0 4"), null));
+        }
+    }
+
+    @Test
+    void skipsCommentsVariationsAndNumbers(){
+        assertEquals(List.of("e4", "e5", "Nf3", "Nc6", "O-O"),
+            PgnImporter.sanTokens("1. e4 e5 {a (b) c} 2.Nf3 (2. f4 $2 {x} (2. d4)) 2... Nc6 ; rest\n3. O-O 1-0"));
+    }
+
+    @Test
+    void sanRoundTrip(){
+        Board b = Board.fromFEN("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        assertEquals("O-O", San.of(b, San.parse(b, "0-0")));
+        assertEquals("Bxa6", San.of(b, San.parse(b, "Bxa6")));
+        assertEquals("Qxf6", San.of(b, San.parse(b, "Qf6")));
+        assertEquals(Move.NONE, San.parse(b, "Ke3"));
+        // both rooks reach d1
+        Board rooks = Board.fromFEN("k7/8/8/8/8/8/8/R4RK1 w - - 0 1");
+        assertEquals("Rad1", San.of(rooks, San.parse(rooks, "Rad1")));
+        assertEquals("Rfd1", San.of(rooks, San.parse(rooks, "Rfxd1")));
+        assertEquals(Move.NONE, San.parse(rooks, "Rd1"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.cmt.chessbot.cache;
+
+import com.cmt.chessbot.search.AlphaBeta;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class AnalysisCacheTest {
+
+    private static final List<String> EVALS = List.of("classic", "nnue");
+
+    private static AlphaBeta.Result result(int depth, String... pv){
+        return new AlphaBeta.Result(pv[0], 25 * depth, depth, List.of(pv), 1000L * depth);
+    }
+
+    @Test
+    void servesOnlyDeepEnoughResults() {
+        AnalysisCache c = new AnalysisCache(EVALS, 10, EvictionPolicy.LRU, null, 0);
+        c.put(1L, "classic", result(6, "e2e4", "e7e5"));
+        assertEquals("e2e4", c.get(1L, "classic", 6).bestMove);
+        assertNotNull(c.get(1L, "classic", 4));
+        assertNull(c.get(1L, "classic", 7));
+        assertNull(c.get(1L, "nnue", 4));
+        // a shallower result never replaces a deeper one
+        c.put(1L, "classic", result(3, "d2d4"));
+        assertEquals(6, c.get(1L, "classic", 1).depth);
+        assertEquals(3L, c.stats().get("memoryHits"));
+    }
+
+    @Test
+    void evictionPolicies() {
+        AnalysisCache lru = new AnalysisCache(EVALS, 2, EvictionPolicy.LRU, null, 0);
+        lru.put(1L, "classic", result(5, "e2e4"));
+        lru.put(2L, "classic", result(5, "d2d4"));
+        lru.get(1L, "classic", 1);
+        lru.put(3L, "classic", result(5, "c2c4"));
+        assertNotNull(lru.get(1L, "classic", 1));
+        assertNull(lru.get(2L, "classic", 1));
+
+        AnalysisCache fifo = new AnalysisCache(EVALS, 2, EvictionPolicy.FIFO, null, 0);
+        fifo.put(1L, "classic", result(5, "e2e4"));
+        fifo.put(2L, "classic", result(5, "d2d4"));
+        fifo.get(1L, "classic", 1);
+        fifo.put(3L, "classic", result(5, "c2c4"));
+        assertNull(fifo.get(1L, "classic", 1));
+
+        AnalysisCache deep = new AnalysisCache(EVALS, 2, EvictionPolicy.SHALLOWEST, null, 0);
+        deep.put(1L, "classic", result(9, "e2e4"));
+        deep.put(2L, "classic", result(2, "d2d4"));
+        deep.put(3L, "classic", result(5, "c2c4"));
+        assertNotNull(deep.get(1L, "classic", 1));
+        assertNull(deep.get(2L, "classic", 1));
+        assertEquals(1L, deep.stats().get("evictions"));
+    }
+
+    @Test
+    void diskTierSurvivesReopen(@TempDir Path dir) {
+        Path file = dir.resolve("analysis.bin");
+        try (AnalysisCache c = new AnalysisCache(EVALS, 10, EvictionPolicy.LRU, file, 1)){
+            c.put(0x1234_5678_9abc_def0L, "nnue", result(8, "e7e8q", "a2a1n", "g1f3"));
+        }
+        try (AnalysisCache c = new AnalysisCache(EVALS, 10, EvictionPolicy.LRU, file, 1)){
+            AlphaBeta.Result r = c.get(0x1234_5678_9abc_def0L, "nnue", 8);
+            assertNotNull(r);
+            assertEquals(List.of("e7e8q", "a2a1n", "g1f3"), r.pv);
+            assertEquals(200, r.scoreCp);
+            assertEquals(8000L, r.nodes);
+            assertEquals(1L, c.stats().get("diskHits"));
+            assertNull(c.get(0x1234_5678_9abc_def0L, "classic", 1));
+        }
+    }
+
+    @Test
+    void damagedDiskRecordIsAMiss(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("analysis.bin");
+        long key = 0x1234_5678_9abc_def0L;
+        try (AnalysisCache c = new AnalysisCache(EVALS, 10, EvictionPolicy.LRU, file, 1)){
+            c.put(key, "nnue", result(8, "e7e8q", "a2a1n", "g1f3"));
+        }
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            int at = (int) (key & (ch.size() / DiskStore.RECORD - 1)) * DiskStore.RECORD;
+            ch.write(ByteBuffer.wrap(new byte[]{(byte) 0x7f}), at + 10); // the score's low byte
+        }
+        try (AnalysisCache c = new AnalysisCache(EVALS, 10, EvictionPolicy.LRU, file, 1)){
+            assertNull(c.get(key, "nnue", 1));
+            assertEquals(0L, c.stats().get("diskHits"));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.cmt.chessbot.controller;
+
+import com.cmt.chessbot.service.ChessService;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ChessControllerTest {
+
+    @LocalServerPort
+    int port;
+
+    @MockitoBean
+    ChessService service;
+
+    // fails after a while, as a long search whose failure comes late
+    private static CompletableFuture<Map<String, Object>> failingAfter(long ms, RuntimeException e) {
+        return CompletableFuture.supplyAsync(() -> { throw e; },
+            CompletableFuture.delayedExecutor(ms, TimeUnit.MILLISECONDS));
+    }
+
+    private HttpResponse<String> evaluate(String body) throws Exception {
+        HttpRequest req = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/chess/evaluate"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        return HttpClient.newHttpClient().send(req, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void aSearchFailingLateStillGetsItsErrorStatus() throws Exception {
+        when(service.evaluate(anyString(), any(), anyInt(), any(), anyBoolean(), anyInt()))
+            .thenReturn(failingAfter(1500, new IllegalArgumentException("illegal move")));
+        HttpResponse<String> resp = evaluate("{\"depth\": 4}");
+        assertEquals(400, resp.statusCode());
+        assertTrue(resp.body().contains("illegal move"), resp.body());
+
+        when(service.evaluate(anyString(), any(), anyInt(), any(), anyBoolean(), anyInt()))
+            .thenReturn(failingAfter(1500, new RejectedExecutionException()));
+        assertEquals(429, evaluate("{\"depth\": 4}").statusCode());
+    }
+
+    @Test
+    void fieldsOfTheWrongKindAreBadRequests() throws Exception {
+        for (String body : new String[]{"{\"threads\": \"two\"}", "{\"stats\": \"yes\"}", "{\"fen\": 5}",
+                                        "{\"depth\": [4]}", "{\"multiPv\": true}"}) {
+            HttpResponse<String> resp = evaluate(body);
+            assertEquals(400, resp.statusCode(), body);
+            assertTrue(resp.body().contains("\"error\""), resp.body());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.cmt.chessbot.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoardTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "rnbqkbnr/pppp1ppp/8/8/3Pp3/8/PPP1PPPP/RNBQKBNR b KQkq d3 0 2",
+        "rnbqkbnr/ppp1pppp/8/3pP3/8/8/PPPP1PPP/RNBQKBNR w KQkq d6 0 2",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 37 120",
+        "r2q1rk1/pP1p2pp/Q4n2/bbp1p3/Np6/1B3NBn/pPPP1PPP/R3K2R b KQ - 0 1",
+    })
+    void fenAndPackedFormRoundTrip(String fen) {
+        Board b = Board.fromFEN(fen);
+        assertEquals(fen, b.toFEN());
+
+        ByteBuffer buf = ByteBuffer.allocate(2 * Board.PACKED_BYTES);
+        buf.position(Board.PACKED_BYTES); // any offset, e.g. one record of many
+        b.pack(buf);
+        assertFalse(buf.hasRemaining());
+        Board u = Board.unpack(buf.position(Board.PACKED_BYTES));
+        assertEquals(fen, u.toFEN());
+        assertEquals(b.hash(), u.hash());
+        assertEquals(b.psqMg(), u.psqMg());
+        assertEquals(b.kingSquare(false), u.kingSquare(false));
+    }
+
+    @Test
+    void doublePushesWriteTheSquarePassedOver() {
+        Board b = Board.fromFEN(Util.START_FEN);
+        b.make(San.parse(b, "e4"));
+        assertEquals("rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1", b.toFEN());
+        b.make(San.parse(b, "c5"));
+        assertEquals("rnbqkbnr/pp1ppppp/8/2p5/4P3/8/PPPP1PPP/RNBQKBNR w KQkq c6 0 2", b.toFEN());
+        assertEquals(b.hash(), Board.fromFEN(b.toFEN()).hash());
+    }
+
+    @Test
+    void lenientAboutSpacingAndMissingClocks() {
+        Board b = Board.fromFEN("  rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR   w KQkq -  ");
+        assertEquals(Util.START_FEN, b.toFEN());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "",
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP w KQkq - 0 1",
+        "rnbqkbnr/pppppppp/9/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "rnbqkbnr/ppppxppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR x KQkq - 0 1",
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQxq - 0 1",
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq e5 0 1",
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - z 1",
+        "rnbq1bnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQ - 0 1",
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBKKBNR w kq - 0 1",
+    })
+    void malformedFenIsRejected(String fen) {
+        assertThrows(IllegalArgumentException.class, () -> Board.fromFEN(fen));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "4k3/8/8/8/8/8/8/4K3 w K - 0 1|4k3/8/8/8/8/8/8/4K3 w - - 0 1",
+        "4k3/8/8/3P4/8/8/8/4K3 w - e6 0 1|4k3/8/8/3P4/8/8/8/4K3 w - - 0 1",
+        "4k3/8/8/8/8/8/8/R3K2R w KQkq - 0 1|4k3/8/8/8/8/8/8/R3K2R w KQ - 0 1",
+        "r3k2r/8/8/8/8/8/8/4K3 b KQkq - 0 1|r3k2r/8/8/8/8/8/8/4K3 b kq - 0 1",
+    })
+    void rightsWithoutTheirPiecesAreDropped(String fens) {
+        String fen = fens.split("\\|")[0], expected = fens.split("\\|")[1];
+        Board b = Board.fromFEN(fen);
+        assertEquals(expected, b.toFEN());
+        assertEquals(Board.fromFEN(expected).hash(), b.hash());
+
+        // the same rights in packed form: pack the clean board, then set all of them again
+        ByteBuffer buf = ByteBuffer.allocate(Board.PACKED_BYTES);
+        b.pack(buf);
+        buf.put(24, (byte) (buf.get(24) | 15 << 1)).put(25, (byte) 5);
+        assertEquals(expected, Board.unpack(buf.clear()).toFEN());
+
+        // every legal move can be made and taken back
+        for (Move m : MoveGen.legalMoves(b)){
+            b.make(m);
+            b.undo(m);
+        }
+        assertEquals(expected, b.toFEN());
+    }
+
+    @Test
+    void malformedPackedFormIsRejected() {
+        ByteBuffer buf = ByteBuffer.allocate(Board.PACKED_BYTES);
+        Board.fromFEN(Util.START_FEN).pack(buf);
+        buf.put(8, (byte) 0xCC); // piece index 12
+        assertThrows(IllegalArgumentException.class, () -> Board.unpack(buf.clear()));
+        assertThrows(IllegalArgumentException.class, () -> Board.unpack(ByteBuffer.allocate(Board.PACKED_BYTES - 1)));
+
+        // square 4 is the black king, the high nibble of byte 10; make it a queen
+        Board.fromFEN(Util.START_FEN).pack(buf.clear());
+        buf.put(10, (byte) (buf.get(10) - 0x10));
+        assertThrows(IllegalArgumentException.class, () -> Board.unpack(buf.clear()));
+    }
+}
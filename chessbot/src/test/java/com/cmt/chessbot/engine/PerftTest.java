@@ -0,0 +1,60 @@
+package com.cmt.chessbot.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// Reference counts from https://www.chessprogramming.org/Perft_Results
+class PerftTest {
+
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    @ParameterizedTest(name = "{1} plies: {0}")
+    @CsvSource(delimiter = ';', value = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1; 1; 20",
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1; 3; 8902",
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1; 5; 4865609",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1; 3; 97862",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1; 4; 4085603",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1; 5; 674624",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1; 4; 422333",
+        "r2q1rk1/pP1p2pp/Q4n2/bbp1p3/Np6/1B3NBn/pPPP1PPP/R3K2R b KQ - 0 1; 4; 422333",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8; 4; 2103487",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10; 4; 3894594",
+    })
+    void referencePositions(String fen, int depth, long expected) {
+        Board b = Board.fromFEN(fen);
+        long hash = b.hash();
+        assertEquals(expected, new Perft().run(b, depth));
+        assertEquals(fen, b.toFEN());
+        assertEquals(hash, b.hash());
+    }
+
+    @Test
+    void divideSumsToPerft() {
+        Map<String, Long> divide = new Perft().divide(Board.fromFEN(KIWIPETE), 3);
+        assertEquals(48, divide.size());
+        assertEquals(1907L, divide.get("e2a6"));
+        assertEquals(97862L, divide.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    void parallelAndCachedMatchSerial() {
+        assertEquals(4085603L, Perft.parallel(Board.fromFEN(KIWIPETE), 4, ForkJoinPool.commonPool(), 0));
+        assertEquals(4085603L, Perft.parallel(Board.fromFEN(KIWIPETE), 4, ForkJoinPool.commonPool(), 16));
+        assertEquals(4085603L, Perft.cached(16).run(Board.fromFEN(KIWIPETE), 4));
+    }
+
+    @Test
+    void tooDeepIsRejected() {
+        Board b = Board.fromFEN(KIWIPETE);
+        assertThrows(IllegalArgumentException.class, () -> new Perft().run(b, Perft.MAX_DEPTH + 1));
+        assertThrows(IllegalArgumentException.class, () -> Perft.parallel(b, 100, ForkJoinPool.commonPool(), 0));
+    }
+}
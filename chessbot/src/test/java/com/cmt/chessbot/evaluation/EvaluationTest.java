@@ -0,0 +1,67 @@
+package com.cmt.chessbot.evaluation;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.MoveGen;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EvaluationTest {
+
+    // incremental material/PST sums after make and undo must match a fresh board
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+    })
+    void incrementalMatchesFresh(String fen) {
+        Board b = Board.fromFEN(fen);
+        int root = Evaluation.evaluate(b);
+        int[] moves = new int[MoveGen.MAX_MOVES], replies = new int[MoveGen.MAX_MOVES];
+        int n = MoveGen.legal(b, moves);
+        for (int i=0; i<n; i++){
+            b.make(moves[i]);
+            assertFresh(b);
+            int k = MoveGen.legal(b, replies);
+            for (int j=0; j<k; j++){
+                b.make(replies[j]);
+                assertFresh(b);
+                b.undo(replies[j]);
+            }
+            b.undo(moves[i]);
+        }
+        assertEquals(root, Evaluation.evaluate(b));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    })
+    void colourFlipNegates(String fen) {
+        assertEquals(Evaluation.evaluate(Board.fromFEN(fen)), -Evaluation.evaluate(Board.fromFEN(flip(fen))));
+    }
+
+    private static void assertFresh(Board b) {
+        Board fresh = Board.fromFEN(b.toFEN());
+        assertEquals(fresh.psqMg(), b.psqMg());
+        assertEquals(fresh.psqEg(), b.psqEg());
+        assertEquals(fresh.phase(), b.phase());
+    }
+
+    // mirrors ranks and swaps colours; castling and en passant are dropped
+    private static String flip(String fen) {
+        String[] f = fen.split(" ");
+        String[] ranks = f[0].split("/");
+        StringBuilder sb = new StringBuilder();
+        for (int i=7; i>=0; i--){
+            for (char ch : ranks[i].toCharArray())
+                sb.append(Character.isLetter(ch) ? (Character.isUpperCase(ch) ? Character.toLowerCase(ch) : Character.toUpperCase(ch)) : ch);
+            if (i > 0) sb.append('/');
+        }
+        return sb + (f[1].equals("w") ? " b" : " w") + " - - 0 1";
+    }
+}
@@ -0,0 +1,74 @@
+package com.cmt.chessbot.evaluation;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.MoveGen;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NnueTest {
+
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+    private static final NnueNetwork SIMD = NnueNetwork.bootstrap(256, true);
+    private static final NnueNetwork SCALAR = SIMD.withKernel(false);
+
+    @Test
+    void vectorKernelIsUsedWhenModuleIsPresent() {
+        // surefire runs with --add-modules jdk.incubator.vector
+        assertTrue(SIMD.kernel().startsWith("simd"), SIMD.kernel());
+        assertEquals("scalar", SCALAR.kernel());
+    }
+
+    // the accumulator after make/undo must equal one rebuilt from scratch, on both kernels
+    @ParameterizedTest
+    @ValueSource(strings = {
+        KIWIPETE,
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+    })
+    void incrementalMatchesRefresh(String fen) {
+        Board b = Board.fromFEN(fen);
+        Evaluator simd = SIMD.attach(b);
+        Board c = Board.fromFEN(fen);
+        Evaluator scalar = SCALAR.attach(c);
+        int root = simd.evaluate(b);
+        int[] moves = new int[MoveGen.MAX_MOVES], replies = new int[MoveGen.MAX_MOVES];
+        int n = MoveGen.legal(b, moves);
+        for (int i=0; i<n; i++){
+            b.make(moves[i]); c.make(moves[i]);
+            int k = MoveGen.legal(b, replies);
+            for (int j=0; j<k; j++){
+                b.make(replies[j]); c.make(replies[j]);
+                int expected = SIMD.evaluate(b);
+                assertEquals(expected, simd.evaluate(b));
+                assertEquals(expected, scalar.evaluate(c));
+                b.undo(replies[j]); c.undo(replies[j]);
+            }
+            b.undo(moves[i]); c.undo(moves[i]);
+        }
+        assertEquals(root, simd.evaluate(b));
+    }
+
+    @Test
+    void bootstrapTracksMaterial() {
+        assertEquals(0, SIMD.evaluate(Board.fromFEN("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1")));
+        int queenUp = SIMD.evaluate(Board.fromFEN("rnb1kbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"));
+        assertTrue(queenUp > 900 && queenUp < 1200, "queen up scored " + queenUp);
+    }
+
+    @Test
+    void fileRoundTrip(@TempDir Path dir) {
+        Path file = dir.resolve("net.bin");
+        SIMD.write(file);
+        NnueNetwork loaded = NnueNetwork.load(file, true);
+        Board b = Board.fromFEN(KIWIPETE);
+        assertEquals(SIMD.hidden(), loaded.hidden());
+        assertEquals(SIMD.evaluate(b), loaded.evaluate(b));
+    }
+}
@@ -0,0 +1,98 @@
+package com.cmt.chessbot.search;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.MoveGen;
+import com.cmt.chessbot.evaluation.Evaluation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrincipalVariationTest {
+
+    @Test
+    void pvIsALegalLineStartingWithTheBestMove() {
+        Board b = Board.fromFEN("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1");
+        AlphaBeta.Result r = search(b, 6, null);
+        assertEquals(r.bestMove, r.pv.get(0));
+        assertTrue(r.pv.size() >= 4, "pv " + r.pv);
+        for (String uci : r.pv) b.make(legal(b, uci));
+    }
+
+    @Test
+    void mateInTwoLineEndsInMate() {
+        Board b = Board.fromFEN("7k/8/8/8/8/8/R7/1R5K w - - 0 1");
+        AlphaBeta.Result r = search(b, 5, null);
+        assertEquals(3, r.pv.size(), "pv " + r.pv);
+        for (String uci : r.pv) b.make(legal(b, uci));
+        assertTrue(b.inCheck());
+        assertEquals(0, MoveGen.legal(b, new int[MoveGen.MAX_MOVES]));
+    }
+
+    @Test
+    void mateAndTablebaseScoresMoveWithTheirPly() {
+        // a win found 3 plies from the root, read back 5 plies from it, is 2 plies further away
+        for (int win : new int[]{AlphaBeta.MATE, AlphaBeta.TB_WIN}) {
+            assertEquals(win - 5, AlphaBeta.fromTT(AlphaBeta.toTT(win - 3, 3), 5));
+            assertEquals(-win + 5, AlphaBeta.fromTT(AlphaBeta.toTT(-win + 3, 3), 5));
+        }
+        assertEquals(120, AlphaBeta.fromTT(AlphaBeta.toTT(120, 3), 5)); // evals are absolute
+    }
+
+    @Test
+    void reportsEveryCompletedIteration() {
+        List<AlphaBeta.Info> infos = new ArrayList<>();
+        AlphaBeta.Result r = search(Board.fromFEN("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"), 5, infos::add);
+        assertEquals(5, infos.size());
+        for (int i=0; i<infos.size(); i++){
+            AlphaBeta.Info info = infos.get(i);
+            assertEquals(i + 1, info.depth);
+            assertTrue(info.seldepth >= info.depth);
+            assertFalse(info.pv.isEmpty());
+        }
+        assertEquals(r.pv, infos.get(4).pv);
+    }
+
+    @Test
+    void multiPvReportsDistinctLegalLinesBestFirst() {
+        String fen = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+        AlphaBeta.Result r = new AlphaBeta(5, TimeManager.infinite(), new TranspositionTable(16), Evaluation.CLASSIC,
+                                           SearchFeature.all()).withMultiPv(4).search(Board.fromFEN(fen));
+        assertEquals(4, r.lines.size());
+        assertEquals(r.bestMove, r.lines.get(0).move);
+        assertEquals(r.scoreCp, r.lines.get(0).scoreCp);
+        assertEquals(4, r.lines.stream().map(l -> l.move).distinct().count());
+        for (int i=0; i<r.lines.size(); i++){
+            AlphaBeta.Line l = r.lines.get(i);
+            if (i > 0) assertTrue(l.scoreCp <= r.lines.get(i - 1).scoreCp, "lines " + r.lines.size());
+            assertEquals(l.move, l.pv.get(0));
+            Board b = Board.fromFEN(fen);
+            for (String uci : l.pv) b.make(legal(b, uci));
+        }
+    }
+
+    @Test
+    void multiPvStopsAtTheLegalMoves() {
+        AlphaBeta searcher = new AlphaBeta(4, TimeManager.infinite(), new TranspositionTable(1), Evaluation.CLASSIC,
+                                           SearchFeature.all()).withMultiPv(4);
+        AlphaBeta.Result r = searcher.search(Board.fromFEN("k7/8/1K6/8/8/8/8/7R b - - 0 1")); // only Kb8
+        assertEquals(1, r.lines.size());
+        assertEquals("a8b8", r.lines.get(0).move);
+    }
+
+    private static AlphaBeta.Result search(Board b, int depth, Consumer<AlphaBeta.Info> listener) {
+        return new AlphaBeta(depth, TimeManager.infinite(), new TranspositionTable(16), Evaluation.CLASSIC, SearchFeature.all())
+            .onIteration(listener).search(b);
+    }
+
+    private static int legal(Board b, String uci) {
+        for (Move m : MoveGen.legalMoves(b)) if (m.uci().equals(uci)) return m.encoded();
+        throw new AssertionError(uci + " is not legal in " + b.toFEN());
+    }
+}
@@ -0,0 +1,54 @@
+package com.cmt.chessbot.search;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.evaluation.Evaluation;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimeManagerTest {
+
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    @Test
+    void clockAllocation() {
+        TimeManager t = TimeManager.clock(60_000, 1_000, 0, 0);
+        assertEquals(60_000 / 30 + 750, t.softMs());
+        assertTrue(t.hardMs() > t.softMs() && t.hardMs() <= 60_000 / 3 + 1_000);
+
+        TimeManager last = TimeManager.clock(5_000, 0, 1, 100);
+        assertEquals(4_900, last.hardMs());
+
+        TimeManager capped = TimeManager.clock(600_000, 0, 0, 0).cap(500);
+        assertEquals(500, capped.hardMs());
+    }
+
+    @Test
+    void hardLimitIsRespected() {
+        long start = System.nanoTime();
+        AlphaBeta.Result r = search(TimeManager.movetime(300));
+        long ms = (System.nanoTime() - start) / 1_000_000;
+        assertNotEquals("none", r.bestMove);
+        assertTrue(ms < 300 + 150, "took " + ms + " ms");
+    }
+
+    @Test
+    void stopFromAnotherThread() throws Exception {
+        TimeManager t = TimeManager.infinite();
+        CompletableFuture<AlphaBeta.Result> f = CompletableFuture.supplyAsync(() -> search(t));
+        Thread.sleep(200);
+        t.stop();
+        AlphaBeta.Result r = f.get();
+        assertNotEquals("none", r.bestMove);
+        assertTrue(r.depth > 0);
+    }
+
+    private static AlphaBeta.Result search(TimeManager t) {
+        return new AlphaBeta(AlphaBeta.MAX_DEPTH, t, new TranspositionTable(16), Evaluation.CLASSIC, SearchFeature.all())
+            .search(Board.fromFEN(KIWIPETE));
+    }
+}
@@ -0,0 +1,85 @@
+package com.cmt.chessbot.service;
+
+import com.cmt.chessbot.book.OpeningBook;
+import com.cmt.chessbot.cache.AnalysisCache;
+import com.cmt.chessbot.cache.EvictionPolicy;
+import com.cmt.chessbot.engine.Util;
+import com.cmt.chessbot.evaluation.Evaluators;
+import com.cmt.chessbot.evaluation.NnueNetwork;
+import com.cmt.chessbot.metrics.EngineMetrics;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.LazySmp;
+import com.cmt.chessbot.search.SearchFeature;
+import com.cmt.chessbot.search.TranspositionTable;
+import com.cmt.chessbot.tablebase.Tablebase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchServiceTest {
+
+    private static final String KIWIPETE = "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1";
+
+    private ExecutorService pool;
+    private BatchService batches;
+
+    @BeforeEach
+    void setUp(){
+        pool = Executors.newFixedThreadPool(2);
+        Evaluators evaluators = new Evaluators(NnueNetwork.bootstrap(128, false), "classic");
+        LazySmp smp = new LazySmp(new TranspositionTable(1), pool, 1);
+        ChessService chess = new ChessService(smp, evaluators, 0, pool,
+            new AnalysisCache(List.of("classic", "nnue"), 0, EvictionPolicy.LRU, null, 0),
+            OpeningBook.empty(), false, Tablebase.empty(), pool, AlphaBeta.MAX_DEPTH, 10_000, 8, 5, 64, ForkJoinPool.commonPool(),
+            new EngineMetrics(new SimpleMeterRegistry()));
+        batches = new BatchService(chess, evaluators, pool, SearchFeature.all(), Tablebase.empty(), 1, 2, 2000);
+    }
+
+    @AfterEach
+    void tearDown(){ pool.shutdownNow(); }
+
+    @Test
+    void everyItemAnswersOnceWithItsIndex() throws InterruptedException {
+        List<Map<String,Object>> out = new CopyOnWriteArrayList<>();
+        try (BatchService.Batch batch = batches.open(out::add)){
+            for (int i=0; i<6; i++) batch.submit(new BatchService.Item(i % 2 == 0 ? Util.START_FEN : KIWIPETE, 3, 0, null));
+            batch.submit(new BatchService.Item(KIWIPETE, 2, 0, "nnue"));
+            batch.submit(new BatchService.Item(Util.START_FEN, 2, 0, "nope"));
+            batch.reject("bad line");
+        }
+        assertEquals(9, out.size());
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8), out.stream().map(r -> (Integer) r.get("index")).sorted().toList());
+        for (Map<String,Object> r : out){
+            int i = (Integer) r.get("index");
+            if (i < 7) assertEquals(i == 6 ? 2 : 3, r.get("depth"), r.toString());
+            else assertTrue(r.containsKey("error"), r.toString());
+        }
+        // a reused searcher gives the same answer as a fresh one
+        assertEquals(out.stream().filter(r -> r.get("index").equals(1)).findFirst().get().get("bestMove"),
+                     out.stream().filter(r -> r.get("index").equals(5)).findFirst().get().get("bestMove"));
+    }
+
+    @Test
+    void failingSinkCancelsTheRest() throws InterruptedException {
+        List<Map<String,Object>> out = new CopyOnWriteArrayList<>();
+        BatchService.Batch batch = batches.open(r -> {
+            out.add(r);
+            throw new IllegalStateException("client went away");
+        });
+        try (batch){
+            for (int i=0; i<20 && !batch.cancelled(); i++) batch.submit(new BatchService.Item(KIWIPETE, 4, 0, null));
+        }
+        assertTrue(batch.cancelled());
+        assertTrue(out.size() < 20, "kept going after the client left: " + out.size());
+    }
+}
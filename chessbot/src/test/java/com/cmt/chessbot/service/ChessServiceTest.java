@@ -0,0 +1,131 @@
+package com.cmt.chessbot.service;
+
+import com.cmt.chessbot.book.OpeningBook;
+import com.cmt.chessbot.cache.AnalysisCache;
+import com.cmt.chessbot.cache.EvictionPolicy;
+import com.cmt.chessbot.engine.Util;
+import com.cmt.chessbot.evaluation.Evaluators;
+import com.cmt.chessbot.evaluation.NnueNetwork;
+import com.cmt.chessbot.metrics.EngineMetrics;
+import com.cmt.chessbot.search.LazySmp;
+import com.cmt.chessbot.search.SearchLimits;
+import com.cmt.chessbot.search.TranspositionTable;
+import com.cmt.chessbot.tablebase.Tablebase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChessServiceTest {
+
+    private ExecutorService helpers, searchPool;
+    private SimpleMeterRegistry registry;
+    private ChessService chess;
+
+    @BeforeEach
+    void setUp(){
+        helpers = Executors.newFixedThreadPool(1);
+        // one thread and one queued search: a thread that is not yet back from the last search
+        // doesn't shed the next, and a third concurrent search is shed
+        searchPool = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1));
+        registry = new SimpleMeterRegistry();
+        Evaluators evaluators = new Evaluators(NnueNetwork.bootstrap(128, false), "classic");
+        chess = new ChessService(new LazySmp(new TranspositionTable(1), helpers, 1), evaluators, 0, helpers,
+            new AnalysisCache(List.of("classic", "nnue"), 16, EvictionPolicy.LRU, null, 0),
+            OpeningBook.empty(), false, Tablebase.empty(), searchPool, 6, 2000, 8, 5, 64, ForkJoinPool.commonPool(),
+            new EngineMetrics(registry));
+    }
+
+    @AfterEach
+    void tearDown(){
+        helpers.shutdownNow();
+        searchPool.shutdownNow();
+    }
+
+    private Map<String,Object> evaluate(SearchLimits limits, boolean stats, int multiPv){
+        return chess.evaluate(Util.START_FEN, limits, 1, null, stats, multiPv).join();
+    }
+
+    @Test
+    void fullPoolShedsAndCancelStops(){
+        SearchLimits deep = new SearchLimits(6, 0, 0, 0, 0, 0, 0);
+        CompletableFuture<Map<String,Object>> first = chess.bestMove(Util.START_FEN, deep, 1, null, false);
+        CompletableFuture<Map<String,Object>> queued = chess.bestMove(Util.START_FEN, deep, 1, null, false);
+        assertThrows(RejectedExecutionException.class, () -> chess.bestMove(Util.START_FEN, deep, 1, null, false));
+        queued.cancel(false);
+        first.cancel(false);
+        assertTrue(first.isCancelled());
+        // the cancelled searches let go of the thread; the queued one never starts
+        assertTimeoutPreemptively(java.time.Duration.ofSeconds(5), () -> {
+            while (((ThreadPoolExecutor) searchPool).getActiveCount() > 0) Thread.sleep(5);
+        });
+    }
+
+    @Test
+    void requestsAreCappedByTheServer(){
+        SearchLimits asked = new SearchLimits(50, 0, 0, 0, 0, 0, 0);
+        Map<String,Object> r = evaluate(asked, false, 1);
+        assertTrue((Integer) r.get("depth") <= 6);
+
+        SearchLimits capped = asked.capped(6, 2000);
+        assertEquals(6, capped.depth);
+        assertEquals(2000, capped.movetimeMs);
+        assertEquals(500, new SearchLimits(4, 500, 0, 0, 0, 0, 0).capped(6, 2000).movetimeMs);
+    }
+
+    @Test
+    void perftIsCappedAndRunsOnTheSearchPool(){
+        assertThrows(IllegalArgumentException.class, () -> chess.perft(Util.START_FEN, 6, false, 0, false));
+        assertThrows(IllegalArgumentException.class, () -> chess.perft(Util.START_FEN, 0, false, 0, false));
+        assertThrows(IllegalArgumentException.class, () -> chess.perft(Util.START_FEN, 3, false, 65, false));
+        assertThrows(IllegalArgumentException.class, () -> chess.perft(Util.START_FEN, 3, true, -1, false));
+        assertEquals(8902L, chess.perft(Util.START_FEN, 3, false, 64, false).join().get("nodes"));
+        assertEquals(8902L, chess.perft(Util.START_FEN, 3, false, 0, false).join().get("nodes"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void searchStatsAreReportedAndRecorded(){
+        SearchLimits depth4 = new SearchLimits(4, 0, 0, 0, 0, 0, 0);
+        Map<String,Object> r = evaluate(depth4, true, 1);
+        Map<String,Object> stats = (Map<String,Object>) r.get("stats");
+        assertTrue((Long) stats.get("nodes") > 0);
+        assertTrue((Long) stats.get("qnodes") <= (Long) stats.get("nodes"));
+        assertEquals(4, ((long[]) stats.get("depthMs")).length);
+        assertEquals(1, registry.get("chess.search.time").timer().count());
+        assertEquals(1, registry.get("chess.cache.lookups").tag("result", "miss").counter().count());
+
+        // the second answer comes from the cache: no stats, nothing searched
+        r = evaluate(depth4, true, 1);
+        assertEquals(true, r.get("cached"));
+        assertNull(r.get("stats"));
+        assertEquals(1, registry.get("chess.search.time").timer().count());
+        assertEquals(1, registry.get("chess.cache.lookups").tag("result", "hit").counter().count());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void multiPvReturnsTheBestRootMoves(){
+        SearchLimits depth4 = new SearchLimits(4, 0, 0, 0, 0, 0, 0);
+        Map<String,Object> r = evaluate(depth4, false, 3);
+        List<Map<String,Object>> lines = (List<Map<String,Object>>) r.get("lines");
+        assertEquals(3, lines.size());
+        assertEquals(r.get("bestMove"), lines.get(0).get("move"));
+        // capped by chess.search.max-multi-pv
+        r = evaluate(depth4, false, 50);
+        assertEquals(8, ((List<?>) r.get("lines")).size());
+    }
+}
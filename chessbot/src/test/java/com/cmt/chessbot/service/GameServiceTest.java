@@ -0,0 +1,110 @@
+package com.cmt.chessbot.service;
+
+import com.cmt.chessbot.book.OpeningBook;
+import com.cmt.chessbot.cache.AnalysisCache;
+import com.cmt.chessbot.cache.EvictionPolicy;
+import com.cmt.chessbot.engine.Util;
+import com.cmt.chessbot.evaluation.Evaluators;
+import com.cmt.chessbot.evaluation.NnueNetwork;
+import com.cmt.chessbot.metrics.EngineMetrics;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.LazySmp;
+import com.cmt.chessbot.search.SearchFeature;
+import com.cmt.chessbot.search.SearchLimits;
+import com.cmt.chessbot.search.TranspositionTable;
+import com.cmt.chessbot.session.GameSessions;
+import com.cmt.chessbot.tablebase.Tablebase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameServiceTest {
+
+    private static final SearchLimits DEPTH_3 = new SearchLimits(3, 0, 0, 0, 0, 0, 0);
+
+    private ExecutorService pool, ponderPool;
+    private GameService games;
+
+    @BeforeEach
+    void setUp(){
+        pool = Executors.newFixedThreadPool(1);
+        ponderPool = Executors.newFixedThreadPool(1);
+        Evaluators evaluators = new Evaluators(NnueNetwork.bootstrap(128, false), "classic");
+        ChessService chess = new ChessService(new LazySmp(new TranspositionTable(1), pool, 1), evaluators, 0, pool,
+            new AnalysisCache(List.of("classic", "nnue"), 0, EvictionPolicy.LRU, null, 0),
+            OpeningBook.empty(), false, Tablebase.empty(), pool, AlphaBeta.MAX_DEPTH, 10_000, 8, 5, 64, ForkJoinPool.commonPool(),
+            new EngineMetrics(new SimpleMeterRegistry()));
+        games = new GameService(chess, evaluators, SearchFeature.all(), Tablebase.empty(), new GameSessions(4, 60_000),
+                                1, 0, ponderPool, 1, 10_000);
+    }
+
+    @AfterEach
+    void tearDown(){
+        pool.shutdownNow();
+        ponderPool.shutdownNow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String ponderMove(Map<String,Object> r){
+        return (String) ((Map<String,Object>) r.get("reply")).get("ponder");
+    }
+
+    @Test
+    void expectedReplyIsAPonderHit(){
+        String id = (String) games.create(null, null, true).get("id");
+        Map<String,Object> r = games.move(id, "e2e4", true, DEPTH_3, false).join();
+        assertEquals(true, r.get("pondering"));
+        String expected = ponderMove(r);
+        assertNotNull(expected);
+        // pondering has got as deep as the reply will ask for
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            while ((Integer) games.get(id).get("ponderDepth") < DEPTH_3.depth) Thread.sleep(5);
+        });
+
+        r = games.move(id, expected, true, DEPTH_3, false).join();
+        assertEquals(true, r.get("expected"));
+        assertEquals(true, r.get("ponderHit"));
+        assertEquals(true, ((Map<?,?>) r.get("reply")).get("pondered"));
+        assertEquals(4, ((List<?>) r.get("moves")).size());
+
+        // anything else is a miss and pondering stops before the next search
+        String next = ponderMove(r);
+        String other = next.equals("a2a3") ? "h2h3" : "a2a3";
+        r = games.move(id, other, false, DEPTH_3, false).join();
+        assertEquals(false, r.get("ponderHit"));
+        assertEquals(false, r.get("pondering"));
+        assertEquals(1L, games.stats().get("ponderHits"));
+        assertEquals(1L, games.stats().get("ponderMisses"));
+    }
+
+    @Test
+    void busyPonderThreadsAreNotWaitedFor(){
+        String a = (String) games.create(null, null, true).get("id");
+        String b = (String) games.create(null, null, true).get("id");
+        assertEquals(true, games.move(a, "e2e4", true, DEPTH_3, false).join().get("pondering"));
+        assertEquals(false, games.move(b, "d2d4", true, DEPTH_3, false).join().get("pondering"));
+        assertEquals(1L, games.stats().get("ponderSkipped"));
+        assertTrue(games.delete(a)); // frees the thread
+    }
+
+    @Test
+    void unknownGamesAndIllegalMoves(){
+        assertNull(games.get("nope"));
+        assertNull(games.move("nope", "e2e4", true, DEPTH_3, false));
+        String id = (String) games.create(Util.START_FEN, null, false).get("id");
+        CompletionException e = assertThrows(CompletionException.class, () -> games.move(id, "e2e5", true, DEPTH_3, false).join());
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        assertEquals(false, games.get(id).get("pondering"));
+    }
+}
@@ -0,0 +1,84 @@
+package com.cmt.chessbot.session;
+
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.Util;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.TimeManager;
+import com.cmt.chessbot.search.TranspositionTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameSessionsTest {
+
+    private static GameSession session(String fen){
+        return new GameSession(fen, "classic", false, new AlphaBeta(1, 0, new TranspositionTable(1)));
+    }
+
+    @Test
+    void idleSessionsExpire(){
+        AtomicLong now = new AtomicLong();
+        GameSessions store = new GameSessions(10, 1000, now::get);
+        GameSession a = store.add(session(Util.START_FEN));
+        GameSession b = store.add(session(Util.START_FEN));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        assertSame(a, store.get(a.id())); // touching a keeps it
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        assertNull(store.get(b.id()));
+        assertSame(a, store.get(a.id()));
+        assertEquals(1L, store.stats().get("expired"));
+    }
+
+    @Test
+    void fullStoreDropsLeastRecentlyUsed(){
+        GameSessions store = new GameSessions(2, 60_000);
+        GameSession a = store.add(session(Util.START_FEN));
+        GameSession b = store.add(session(Util.START_FEN));
+        store.get(a.id());
+        GameSession c = store.add(session(Util.START_FEN));
+        assertEquals(2, store.size());
+        assertNull(store.get(b.id()));
+        assertNotNull(store.get(a.id()));
+        assertNotNull(store.get(c.id()));
+        assertTrue(store.remove(c.id()));
+        assertFalse(store.remove(c.id()));
+    }
+
+    @Test
+    void thirdOccurrenceEndsTheGame(){
+        GameSession s = session(Util.START_FEN);
+        String[] shuffle = {"g1f3", "g8f6", "f3g1", "f6g8"};
+        for (int round=0; round<2; round++){
+            for (String m : shuffle){
+                assertEquals("ongoing", s.status());
+                s.play(s.parse(m));
+            }
+        }
+        assertEquals(2, s.board().repetitions());
+        assertTrue(s.board().isRepetition());
+        assertEquals("threefold", s.status());
+    }
+
+    @Test
+    void searchesContinueFromTheGame(){
+        GameSession s = session("6k1/5ppp/8/8/8/8/8/R5K1 w - - 0 1");
+        assertEquals(Move.NONE, s.parse("a1a9"));
+        AlphaBeta.Result r = s.searcher().reuse(3, TimeManager.movetime(0)).search(s.board());
+        assertEquals("a1a8", r.bestMove);
+        s.play(s.parse(r.bestMove), r.pv);
+        assertEquals("checkmate", s.status());
+        assertEquals(List.of("a1a8"), s.moves());
+    }
+
+    @Test
+    void replyIsComparedWithTheLastLine(){
+        GameSession s = session(Util.START_FEN);
+        s.play(s.parse("e4"), List.of("e2e4", "e7e5", "g1f3"));
+        assertTrue(s.expected(s.parse("e5")));
+        assertFalse(s.expected(s.parse("c7c5")));
+    }
+}
@@ -0,0 +1,109 @@
+package com.cmt.chessbot.tablebase;
+
+import com.cmt.chessbot.engine.Board;
+import com.cmt.chessbot.engine.Move;
+import com.cmt.chessbot.engine.MoveGen;
+import com.cmt.chessbot.search.AlphaBeta;
+import com.cmt.chessbot.search.SearchFeature;
+import com.cmt.chessbot.search.TimeManager;
+import com.cmt.chessbot.search.TranspositionTable;
+import com.cmt.chessbot.evaluation.Evaluation;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TablebaseTest {
+
+    @TempDir
+    static Path dir;
+    static Tablebase tb;
+
+    @BeforeAll
+    static void generate(){
+        // KRvK first so it is generated and written alongside KQvK
+        Tablebase building = new Tablebase(Tablebase.MAX_PIECES, 0);
+        TablebaseGenerator.build(Material.of("KRvK"), building, dir);
+        TablebaseGenerator.build(Material.of("KvKQ"), building, dir);
+        tb = Tablebase.open(dir, 3, 8);
+    }
+
+    @AfterAll
+    static void close(){ tb.close(); }
+
+    @Test
+    void materialIsCanonical(){
+        assertEquals("KQvK", Material.of("kvkq").name);
+        assertEquals("KQvKR", Material.of("KRvKQ").name);
+        assertEquals("KRPvKR", Material.of("KRvKRP").name);
+        assertTrue(Files.exists(dir.resolve("KQvK" + Tablebase.SUFFIX)));
+        assertEquals(2, tb.size());
+    }
+
+    @Test
+    void terminalAndMirroredPositions(){
+        assertEquals(-1, tb.probe(Board.fromFEN("5Q1k/8/6K1/8/8/8/8/8 b - - 0 1")));  // mated: loss, dtz 0
+        assertEquals(0, tb.probe(Board.fromFEN("7k/5Q2/6K1/8/8/8/8/8 b - - 0 1")));   // stalemate
+        assertEquals(0, tb.probe(Board.fromFEN("7k/8/8/8/8/8/1q6/K7 w - - 0 1")));     // Kxb2 only
+        assertEquals(Tablebase.WIN, Tablebase.wdl(tb.probe(Board.fromFEN("k7/8/8/8/8/8/7q/K7 b - - 0 1"))));
+        assertEquals(Tablebase.UNKNOWN, tb.probe(Board.fromFEN("7k/8/8/8/8/8/1q6/K6n w - - 0 1")));
+        assertEquals(0, tb.probe(Board.fromFEN("7k/8/8/8/8/8/8/K7 w - - 0 1")));
+    }
+
+    @Test
+    void rootMoveMates(){
+        assertNull(tb.root(Board.fromFEN("7k/8/5QK1/8/8/8/8/8 w - - 0 1"))); // black already in check
+        Board b = Board.fromFEN("7k/8/6K1/8/8/8/8/5Q2 w - - 0 1");
+        Tablebase.RootMove root = tb.root(b);
+        assertEquals(Tablebase.WIN, root.wdl());
+        assertEquals(1, root.dtz());
+        b.make(root.move());
+        assertTrue(b.inCheck());
+        assertEquals(0, MoveGen.legal(b, new int[MoveGen.MAX_MOVES]));
+    }
+
+    // following root moves, dtz drops by one every ply until mate
+    @Test
+    void dtzCountsDownAlongBestPlay(){
+        SplittableRandom random = new SplittableRandom(7);
+        Material m = Material.of("KRvK");
+        int[] sqs = new int[m.count];
+        Board b = new Board();
+        int checked = 0;
+        while (checked < 200){
+            boolean white = m.decode(random.nextLong(m.size), sqs);
+            if (!m.valid(sqs)) continue;
+            b.set(m.pieces, sqs, m.count, white);
+            if (b.squareAttacked(b.kingSquare(!white), white)) continue;
+            int v = tb.probe(b);
+            if (Tablebase.wdl(v) != Tablebase.WIN) continue;
+            checked++;
+            int dtz = Tablebase.dtz(v);
+            while (dtz > 0){
+                Tablebase.RootMove win = tb.root(b);
+                assertEquals(dtz, win.dtz(), b.toFEN());
+                assertEquals(0, Move.flags(win.move()) & Move.CAPTURE, b.toFEN());
+                b.make(win.move());
+                v = tb.probe(b);
+                assertEquals(Tablebase.LOSS, Tablebase.wdl(v), b.toFEN());
+                assertEquals(dtz - 1, Tablebase.dtz(v), b.toFEN());
+                if (dtz > 1) b.make(tb.root(b).move());
+                dtz -= 2;
+            }
+        }
+    }
+
+    @Test
+    void searchScoresTablebaseWins(){
+        Board b = Board.fromFEN("8/8/8/3k4/8/8/8/R3K3 w - - 0 1"); // castling rights absent: probed
+        AlphaBeta.Result r = new AlphaBeta(3, TimeManager.infinite(), new TranspositionTable(1), Evaluation.CLASSIC,
+                                           SearchFeature.all()).withTablebase(tb).search(b);
+        assertTrue(r.scoreCp > AlphaBeta.TB_WIN - 10, "score " + r.scoreCp);
+    }
+}